@@ -1,5 +1,7 @@
 package org.molgenis.lifelines;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -18,19 +20,27 @@ import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.molgenis.DatabaseConfig;
-import org.molgenis.catalogmanager.CatalogManagerService;
 import org.molgenis.data.DataService;
 import org.molgenis.elasticsearch.config.EmbeddedElasticSearchConfig;
+import org.molgenis.lifelines.catalog.CatalogIndexer;
+import org.molgenis.lifelines.catalog.CatalogLoadJobService;
+import org.molgenis.lifelines.catalog.CatalogSnapshotStore;
+import org.molgenis.lifelines.catalog.CatalogStreamReader;
+import org.molgenis.lifelines.catalog.CatalogTreeService;
 import org.molgenis.lifelines.catalog.GenericLayerCatalogManagerService;
 import org.molgenis.lifelines.catalog.LifeLinesCatalogManagerService;
+import org.molgenis.lifelines.catalog.OrganizerCatalogCache;
 import org.molgenis.lifelines.studymanager.GenericLayerDataQueryService;
 import org.molgenis.lifelines.studymanager.GenericLayerStudyManagerService;
 import org.molgenis.lifelines.studymanager.LifeLinesStudyManagerService;
+import org.molgenis.lifelines.studymanager.QualityMeasureDocumentCache;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
 import org.molgenis.omx.OmxConfig;
 import org.molgenis.omx.catalogmanager.OmxCatalogManagerService;
 import org.molgenis.omx.config.DataExplorerConfig;
 import org.molgenis.omx.search.DataSetsIndexer;
 import org.molgenis.omx.studymanager.OmxStudyManagerService;
+import org.molgenis.search.SearchService;
 import org.molgenis.security.user.MolgenisUserService;
 import org.molgenis.studymanager.StudyManagerService;
 import org.molgenis.ui.MolgenisWebAppConfig;
@@ -42,6 +52,8 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ResourceUtils;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 @Configuration
@@ -58,6 +70,45 @@ public class WebAppConfig extends MolgenisWebAppConfig
 	
 	@Value("${lifelines.study.definition.service.wsdl.url}")
 	private String studyDefinitionWsdlUrl;
+
+	@Value("${lifelines.catalog.load.batch.size:1000}")
+	private int catalogLoadBatchSize;
+
+	@Value("${lifelines.catalog.load.streaming:false}")
+	private boolean catalogLoadStreaming;
+
+	@Value("${lifelines.catalog.load.parallelism:1}")
+	private int catalogLoadParallelism;
+
+	@Value("${lifelines.catalog.load.jobs.threads:1}")
+	private int catalogLoadJobsThreads;
+
+	@Value("${lifelines.catalog.index.queue.size:10}")
+	private int catalogIndexQueueSize;
+
+	@Value("${lifelines.catalog.releases.cache.ttl:300}")
+	private long catalogReleasesCacheTtl; // seconds, 0 disables caching
+
+	@Value("${lifelines.catalog.cache.size:5}")
+	private int catalogCacheSize;
+
+	@Value("${lifelines.catalog.snapshot.dir:@null}")
+	private String catalogSnapshotDir;
+
+	@Value("${lifelines.study.definition.status.query.threads:4}")
+	private int studyDefinitionStatusQueryThreads;
+
+	@Value("${lifelines.study.definition.status.query.timeout:60}")
+	private long studyDefinitionStatusQueryTimeout; // seconds
+
+	@Value("${lifelines.study.definition.cache.size:100}")
+	private int studyDefinitionCacheSize;
+
+	@Value("${lifelines.study.definition.cache.ttl:60}")
+	private long studyDefinitionCacheTtl; // seconds
+
+	@Value("${lifelines.hl7.schema:@null}")
+	private String hl7Schema; // location of the HL7 schema to validate whole received documents, e.g. classpath:...
 	
 	@Autowired
 	private DataService dataService;
@@ -68,6 +119,12 @@ public class WebAppConfig extends MolgenisWebAppConfig
 	@Autowired
 	private DataSetsIndexer dataSetsIndexer;
 
+	@Autowired
+	private SearchService searchService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	@Bean
 	public HttpClient httpClient()
 	{
@@ -103,17 +160,66 @@ public class WebAppConfig extends MolgenisWebAppConfig
 	}
 
 	@Bean
-	public CatalogManagerService catalogManagerService() throws MalformedURLException
+	public Hl7JaxbCodec hl7JaxbCodec()
+	{
+		try
+		{
+			return new Hl7JaxbCodec(hl7Schema != null ? ResourceUtils.getURL(hl7Schema) : null);
+		}
+		catch (FileNotFoundException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public CatalogIndexer catalogIndexer()
+	{
+		return new CatalogIndexer(dataSetsIndexer, catalogIndexQueueSize);
+	}
+
+	@Bean
+	public OrganizerCatalogCache organizerCatalogCache()
+	{
+		CatalogSnapshotStore catalogSnapshotStore = catalogSnapshotDir != null ? new CatalogSnapshotStore(new File(
+				catalogSnapshotDir), hl7JaxbCodec()) : null;
+		return new OrganizerCatalogCache(catalogSnapshotStore, catalogCacheSize);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public LifeLinesCatalogManagerService catalogManagerService() throws MalformedURLException
 	{
 		GenericLayerCatalogService genericLayerCatalogService = new CatalogService(new URL(catalogWsdlUrl))
 				.getBasicHttpBindingGenericLayerCatalogService();
+		CatalogStreamReader catalogStreamReader = catalogLoadStreaming ? new CatalogStreamReader(
+				genericLayerCatalogService, httpClient(), hl7JaxbCodec()) : null;
 		GenericLayerCatalogManagerService genericLayerCatalogManagerService = new GenericLayerCatalogManagerService(
-				dataService, genericLayerCatalogService, dataSetsIndexer);
+				dataService, genericLayerCatalogService, catalogIndexer(), catalogLoadBatchSize, catalogStreamReader,
+				catalogLoadParallelism, searchService, catalogReleasesCacheTtl * 1000, organizerCatalogCache());
 		OmxCatalogManagerService omxCatalogManagerService = new OmxCatalogManagerService(dataService);
 		return new LifeLinesCatalogManagerService(omxCatalogManagerService, genericLayerCatalogManagerService,
 				dataService);
 	}
 
+	@Bean
+	public CatalogTreeService catalogTreeService() throws MalformedURLException
+	{
+		return new CatalogTreeService(catalogManagerService(), dataService);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public CatalogLoadJobService catalogLoadJobService() throws MalformedURLException
+	{
+		return new CatalogLoadJobService(catalogManagerService(), transactionManager, catalogLoadJobsThreads);
+	}
+
+	@Bean
+	public QualityMeasureDocumentCache qualityMeasureDocumentCache()
+	{
+		return new QualityMeasureDocumentCache(hl7JaxbCodec(), studyDefinitionCacheSize,
+				studyDefinitionCacheTtl * 1000);
+	}
+
 	@Bean
 	public StudyManagerService studyDefinitionManagerService() throws MalformedURLException
 	{
@@ -122,7 +228,8 @@ public class WebAppConfig extends MolgenisWebAppConfig
 
 		GenericLayerStudyManagerService genericLayerStudyManagerService = new GenericLayerStudyManagerService(
 				genericLayerStudyDefinitionService, catalogManagerService(), genericLayerDataQueryService,
-				molgenisUserService, dataService);
+				molgenisUserService, dataService, studyDefinitionStatusQueryThreads,
+				studyDefinitionStatusQueryTimeout * 1000, qualityMeasureDocumentCache());
 
 		LifeLinesAppProfile lifeLinesAppProfile = appProfile != null ? LifeLinesAppProfile.valueOf(appProfile
 				.toUpperCase()) : LifeLinesAppProfile.WEBSITE;
@@ -0,0 +1,197 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Entity;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Deletes a loaded catalog: all protocols of the catalog tree, their features, the categories of these features and the
+ * unit ontology terms that are no longer referred to by any feature. The catalog tree is read once, after that entities
+ * are deleted per entity type in batches instead of one entity at a time.
+ *
+ * Protocols are deleted parents first, deleting a protocol removes its links to its subprotocols and features so that
+ * protocols and features are never deleted while a protocol still refers to them. The persistence context is cleared
+ * after each batch, each batch is therefore retrieved by id right before it is deleted.
+ *
+ * Features that study data refers to are kept together with their categories. Unit ontology terms are shared between
+ * catalogs (see {@link UnitOntologyTermRegistry}), unit ontology terms that are still used by features of other
+ * catalogs or by kept features are kept.
+ */
+class CatalogDeleter
+{
+	private static final Logger logger = Logger.getLogger(CatalogDeleter.class);
+
+	private final DataService dataService;
+	private final int batchSize;
+
+	private int nrDeletedEntities;
+
+	public CatalogDeleter(DataService dataService, int batchSize)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be larger than 0");
+		this.dataService = dataService;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Deletes the catalog with the given root protocol
+	 *
+	 * @param rootProtocol
+	 */
+	public void delete(Protocol rootProtocol)
+	{
+		Set<Protocol> protocols = Collections.newSetFromMap(new IdentityHashMap<Protocol, Boolean>());
+		List<Integer> protocolIds = new ArrayList<Integer>();
+		Set<ObservableFeature> features = Collections.newSetFromMap(new IdentityHashMap<ObservableFeature, Boolean>());
+		collect(rootProtocol, protocols, protocolIds, features);
+
+		List<Integer> featureIds = new ArrayList<Integer>(features.size());
+		Set<OntologyTerm> units = Collections.newSetFromMap(new IdentityHashMap<OntologyTerm, Boolean>());
+		for (ObservableFeature feature : features)
+		{
+			featureIds.add(feature.getId());
+			if (feature.getUnit() != null) units.add(feature.getUnit());
+		}
+		List<Integer> unitIds = new ArrayList<Integer>(units.size());
+		for (OntologyTerm unit : units)
+			unitIds.add(unit.getId());
+
+		// protocols refer to features, categories refer to features
+		for (List<Integer> protocolIdsPartition : Iterables.partition(protocolIds, batchSize))
+		{
+			List<Protocol> catalogProtocols = toList(dataService.findAll(Protocol.ENTITY_NAME,
+					new QueryImpl().in(Protocol.ID, protocolIdsPartition), Protocol.class));
+			delete(Protocol.ENTITY_NAME, catalogProtocols);
+		}
+
+		List<Integer> unreferencedFeatureIds = new ArrayList<Integer>(featureIds.size());
+		for (List<Integer> featureIdsPartition : Iterables.partition(featureIds, batchSize))
+			unreferencedFeatureIds.addAll(getUnreferencedFeatureIds(featureIdsPartition));
+		if (unreferencedFeatureIds.size() < featureIds.size())
+		{
+			logger.info("kept " + (featureIds.size() - unreferencedFeatureIds.size())
+					+ " features that study data refers to");
+		}
+		featureIds = unreferencedFeatureIds;
+
+		for (List<Integer> featureIdsPartition : Iterables.partition(featureIds, batchSize))
+		{
+			List<Category> categories = toList(dataService.findAll(Category.ENTITY_NAME,
+					new QueryImpl().in(Category.OBSERVABLEFEATURE, featureIdsPartition), Category.class));
+			delete(Category.ENTITY_NAME, categories);
+		}
+		for (List<Integer> featureIdsPartition : Iterables.partition(featureIds, batchSize))
+		{
+			List<ObservableFeature> catalogFeatures = toList(dataService.findAll(ObservableFeature.ENTITY_NAME,
+					new QueryImpl().in(ObservableFeature.ID, featureIdsPartition), ObservableFeature.class));
+			delete(ObservableFeature.ENTITY_NAME, catalogFeatures);
+		}
+		for (List<Integer> unitIdsPartition : Iterables.partition(unitIds, batchSize))
+		{
+			// units of the remaining features, the features of this catalog were deleted before
+			Set<Integer> usedUnitIds = new HashSet<Integer>();
+			for (ObservableFeature feature : dataService.findAll(ObservableFeature.ENTITY_NAME,
+					new QueryImpl().in(ObservableFeature.UNIT, unitIdsPartition), ObservableFeature.class))
+				usedUnitIds.add(feature.getUnit().getId());
+
+			List<OntologyTerm> unusedUnits = new ArrayList<OntologyTerm>();
+			for (OntologyTerm unit : dataService.findAll(OntologyTerm.ENTITY_NAME,
+					new QueryImpl().in(OntologyTerm.ID, unitIdsPartition), OntologyTerm.class))
+			{
+				if (!usedUnitIds.contains(unit.getId())) unusedUnits.add(unit);
+			}
+			delete(OntologyTerm.ENTITY_NAME, unusedUnits);
+		}
+	}
+
+	/**
+	 * Returns the number of entities deleted from the database
+	 *
+	 * @return
+	 */
+	public int getNrDeletedEntities()
+	{
+		return nrDeletedEntities;
+	}
+
+	/**
+	 * Collects the protocol ids of a protocol tree in pre-order (parents first) and the features of the tree
+	 */
+	private void collect(Protocol protocol, Set<Protocol> protocols, List<Integer> protocolIds,
+			Set<ObservableFeature> features)
+	{
+		if (!protocols.add(protocol)) return;
+		protocolIds.add(protocol.getId());
+		List<Protocol> subprotocols = protocol.getSubprotocols();
+		if (subprotocols != null)
+		{
+			for (Protocol subprotocol : subprotocols)
+				collect(subprotocol, protocols, protocolIds, features);
+		}
+		List<ObservableFeature> protocolFeatures = protocol.getFeatures();
+		if (protocolFeatures != null) features.addAll(protocolFeatures);
+	}
+
+	/**
+	 * Returns the ids of the given features that no observed value refers to
+	 */
+	private List<Integer> getUnreferencedFeatureIds(List<Integer> featureIds)
+	{
+		// catalogs without study data only need one query per batch
+		if (dataService.count(ObservedValue.ENTITY_NAME, new QueryImpl().in(ObservedValue.FEATURE, featureIds)) == 0)
+		{
+			return featureIds;
+		}
+
+		Set<Integer> referencedFeatureIds = new HashSet<Integer>();
+		for (ObservedValue observedValue : dataService.findAll(ObservedValue.ENTITY_NAME,
+				new QueryImpl().in(ObservedValue.FEATURE, featureIds), ObservedValue.class))
+			referencedFeatureIds.add(observedValue.getFeature().getId());
+
+		List<Integer> unreferencedFeatureIds = new ArrayList<Integer>();
+		for (Integer featureId : featureIds)
+		{
+			if (!referencedFeatureIds.contains(featureId)) unreferencedFeatureIds.add(featureId);
+		}
+		return unreferencedFeatureIds;
+	}
+
+	private void delete(String entityName, List<? extends Entity> entities)
+	{
+		for (List<? extends Entity> partition : Iterables.partition(entities, batchSize))
+		{
+			dataService.delete(entityName, partition);
+
+			// all repositories share one persistence context, flushing and clearing one of them suffices
+			CrudRepository repository = dataService.getCrudRepository(entityName);
+			repository.flush();
+			repository.clearCache();
+
+			nrDeletedEntities += partition.size();
+		}
+	}
+
+	private static <E> List<E> toList(Iterable<E> entities)
+	{
+		List<E> entityList = new ArrayList<E>();
+		Iterables.addAll(entityList, entities);
+		return entityList;
+	}
+}
@@ -0,0 +1,25 @@
+package org.molgenis.lifelines.catalog;
+
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+/**
+ * Collects the entities created while converting a catalog
+ */
+public interface CatalogEntityCollector
+{
+	void add(OntologyTerm ontologyTerm);
+
+	void add(ObservableFeature feature);
+
+	void add(Category category);
+
+	/**
+	 * Add a protocol, the subprotocols of this protocol must have been added before
+	 *
+	 * @param protocol
+	 */
+	void add(Protocol protocol);
+}
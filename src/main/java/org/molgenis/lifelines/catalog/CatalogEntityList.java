@@ -0,0 +1,80 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+/**
+ * Keeps collected catalog entities in memory so that catalog parts can be converted independently and written
+ * afterwards in a fixed order
+ */
+public class CatalogEntityList implements CatalogEntityCollector
+{
+	private final List<OntologyTerm> ontologyTerms;
+	private final List<ObservableFeature> features;
+	private final List<Category> categories;
+	private final List<Protocol> protocols;
+
+	public CatalogEntityList()
+	{
+		this.ontologyTerms = new ArrayList<OntologyTerm>();
+		this.features = new ArrayList<ObservableFeature>();
+		this.categories = new ArrayList<Category>();
+		this.protocols = new ArrayList<Protocol>();
+	}
+
+	@Override
+	public void add(OntologyTerm ontologyTerm)
+	{
+		ontologyTerms.add(ontologyTerm);
+	}
+
+	@Override
+	public void add(ObservableFeature feature)
+	{
+		features.add(feature);
+	}
+
+	@Override
+	public void add(Category category)
+	{
+		categories.add(category);
+	}
+
+	@Override
+	public void add(Protocol protocol)
+	{
+		protocols.add(protocol);
+	}
+
+	/**
+	 * Returns the collected categories
+	 *
+	 * @return
+	 */
+	public List<Category> getCategories()
+	{
+		return categories;
+	}
+
+	/**
+	 * Adds all collected entities to the given collector in dependency order
+	 *
+	 * @param catalogEntityCollector
+	 */
+	public void writeTo(CatalogEntityCollector catalogEntityCollector)
+	{
+		for (OntologyTerm ontologyTerm : ontologyTerms)
+			catalogEntityCollector.add(ontologyTerm);
+		for (ObservableFeature feature : features)
+			catalogEntityCollector.add(feature);
+		for (Category category : categories)
+			catalogEntityCollector.add(category);
+		for (Protocol protocol : protocols)
+			catalogEntityCollector.add(protocol);
+	}
+}
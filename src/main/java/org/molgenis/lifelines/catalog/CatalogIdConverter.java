@@ -17,6 +17,17 @@ public class CatalogIdConverter
 		return PREFIX_CATALOG + id;
 	}
 
+	/**
+	 * Returns whether the identifier is the identifier of a catalog release, catalogs of study definitions excluded
+	 * 
+	 * @param identifier
+	 * @return
+	 */
+	public static boolean isCatalogOmxIdentifier(String identifier)
+	{
+		return identifier.startsWith(PREFIX_CATALOG) && !identifier.startsWith(PREFIX_STUDYDEFINITION);
+	}
+
 	public static final String omxIdentifierToCatalogId(String identifier)
 	{
 		if (!identifier.startsWith(PREFIX_CATALOG))
@@ -0,0 +1,171 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.molgenis.omx.search.DataSetsIndexer;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Indexes loaded catalogs outside of the transaction that loaded them. Indexing starts after the load transaction
+ * committed and runs on a single indexing thread, so the load transaction is not held open while the catalog is
+ * indexed. Indexing requests wait in a bounded queue. A request for a catalog that is already waiting to be indexed
+ * joins the waiting request instead of indexing the catalog twice. When the queue is full the thread that requests
+ * indexing blocks until the queue has room, so that a committed catalog is always indexed. The thread that requests
+ * indexing never indexes a catalog itself.
+ */
+public class CatalogIndexer
+{
+	private static final Logger logger = Logger.getLogger(CatalogIndexer.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 10;
+
+	private final DataSetsIndexer dataSetsIndexer;
+	private final ThreadPoolExecutor executor;
+	/** jobs waiting for the indexing of a catalog per root protocol id */
+	private final Map<Integer, List<CatalogLoadJob>> waitingJobs;
+
+	public CatalogIndexer(DataSetsIndexer dataSetsIndexer)
+	{
+		this(dataSetsIndexer, DEFAULT_QUEUE_SIZE);
+	}
+
+	public CatalogIndexer(DataSetsIndexer dataSetsIndexer, int queueSize)
+	{
+		if (dataSetsIndexer == null) throw new IllegalArgumentException("dataSetsIndexer is null");
+		if (queueSize <= 0) throw new IllegalArgumentException("queueSize must be larger than 0");
+		this.dataSetsIndexer = dataSetsIndexer;
+		this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+				queueSize), new BlockingPolicy());
+		this.waitingJobs = new HashMap<Integer, List<CatalogLoadJob>>();
+	}
+
+	/**
+	 * Indexes the catalog with the given root protocol after the current transaction committed or immediately if
+	 * there is no current transaction. The phase of the given job is set to finished or failed once the catalog is
+	 * indexed.
+	 *
+	 * @param rootProtocolId
+	 * @param catalogLoadJob
+	 */
+	public void index(final Integer rootProtocolId, final CatalogLoadJob catalogLoadJob)
+	{
+		catalogLoadJob.setPhase(CatalogLoadJob.Phase.INDEX);
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+			{
+				@Override
+				public void afterCommit()
+				{
+					submit(rootProtocolId, catalogLoadJob);
+				}
+			});
+		}
+		else
+		{
+			submit(rootProtocolId, catalogLoadJob);
+		}
+	}
+
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	private void submit(final Integer rootProtocolId, final CatalogLoadJob catalogLoadJob)
+	{
+		synchronized (waitingJobs)
+		{
+			List<CatalogLoadJob> catalogLoadJobs = waitingJobs.get(rootProtocolId);
+			if (catalogLoadJobs != null)
+			{
+				catalogLoadJobs.add(catalogLoadJob);
+				return;
+			}
+			catalogLoadJobs = new ArrayList<CatalogLoadJob>();
+			catalogLoadJobs.add(catalogLoadJob);
+			waitingJobs.put(rootProtocolId, catalogLoadJobs);
+		}
+
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// requests after this point index the catalog again, it might have changed since indexing started
+					List<CatalogLoadJob> catalogLoadJobs;
+					synchronized (waitingJobs)
+					{
+						catalogLoadJobs = waitingJobs.remove(rootProtocolId);
+					}
+
+					try
+					{
+						dataSetsIndexer.indexProtocolsSynced(Collections.<Object> singletonList(rootProtocolId));
+						for (CatalogLoadJob catalogLoadJob : catalogLoadJobs)
+							catalogLoadJob.setPhase(CatalogLoadJob.Phase.FINISHED);
+					}
+					catch (RuntimeException e)
+					{
+						logger.error("error indexing catalog protocol [" + rootProtocolId + "]", e);
+						fail(catalogLoadJobs, e.getMessage());
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			logger.error("catalog protocol [" + rootProtocolId + "] is not indexed", e);
+			List<CatalogLoadJob> catalogLoadJobs;
+			synchronized (waitingJobs)
+			{
+				catalogLoadJobs = waitingJobs.remove(rootProtocolId);
+			}
+			fail(catalogLoadJobs, e.getMessage());
+		}
+	}
+
+	private static void fail(List<CatalogLoadJob> catalogLoadJobs, String errorMessage)
+	{
+		for (CatalogLoadJob catalogLoadJob : catalogLoadJobs)
+		{
+			catalogLoadJob.setErrorMessage(errorMessage);
+			catalogLoadJob.setPhase(CatalogLoadJob.Phase.FAILED);
+		}
+	}
+
+	/**
+	 * Blocks the submitting thread until the queue has room for the rejected task. Tasks are only rejected when the
+	 * executor is shut down or the submitting thread is interrupted while waiting.
+	 */
+	private static class BlockingPolicy implements RejectedExecutionHandler
+	{
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+		{
+			if (executor.isShutdown()) throw new RejectedExecutionException("indexer is shut down");
+			try
+			{
+				executor.getQueue().put(runnable);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("interrupted while waiting for the indexing queue", e);
+			}
+		}
+	}
+}
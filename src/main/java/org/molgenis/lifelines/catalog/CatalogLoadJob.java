@@ -0,0 +1,129 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a catalog load. A job is updated by the loading thread and can be read by other threads at any time.
+ */
+public class CatalogLoadJob
+{
+	public enum Phase
+	{
+		QUEUED, DOWNLOAD, PARSE, PERSIST, INDEX, FINISHED, FAILED
+	}
+
+	private final String id;
+	private final String catalogId;
+	private final boolean catalogOfStudyDefinition;
+	private final Date creationDate;
+	private final AtomicInteger nrOrganizers;
+
+	private volatile Phase phase;
+	private volatile int nrWrittenEntities;
+	private volatile Date endDate;
+	private volatile String errorMessage;
+
+	public CatalogLoadJob(String catalogId, boolean catalogOfStudyDefinition)
+	{
+		if (catalogId == null) throw new IllegalArgumentException("catalogId is null");
+		this.id = UUID.randomUUID().toString();
+		this.catalogId = catalogId;
+		this.catalogOfStudyDefinition = catalogOfStudyDefinition;
+		this.creationDate = new Date();
+		this.nrOrganizers = new AtomicInteger();
+		this.phase = Phase.QUEUED;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Returns the catalog release id or the study definition id of the catalog that is loaded
+	 *
+	 * @return
+	 */
+	public String getCatalogId()
+	{
+		return catalogId;
+	}
+
+	public boolean isCatalogOfStudyDefinition()
+	{
+		return catalogOfStudyDefinition;
+	}
+
+	public Date getCreationDate()
+	{
+		return creationDate;
+	}
+
+	public Phase getPhase()
+	{
+		return phase;
+	}
+
+	public void setPhase(Phase phase)
+	{
+		this.phase = phase;
+		if (phase == Phase.FINISHED || phase == Phase.FAILED) this.endDate = new Date();
+	}
+
+	/**
+	 * Returns the number of catalog organizers read so far
+	 *
+	 * @return
+	 */
+	public int getNrOrganizers()
+	{
+		return nrOrganizers.get();
+	}
+
+	public void incrementNrOrganizers()
+	{
+		nrOrganizers.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of catalog entities written to the database
+	 *
+	 * @return
+	 */
+	public int getNrWrittenEntities()
+	{
+		return nrWrittenEntities;
+	}
+
+	public void setNrWrittenEntities(int nrWrittenEntities)
+	{
+		this.nrWrittenEntities = nrWrittenEntities;
+	}
+
+	/**
+	 * Returns the date at which the job finished or failed, null if the job did not end yet
+	 *
+	 * @return
+	 */
+	public Date getEndDate()
+	{
+		return endDate;
+	}
+
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage)
+	{
+		this.errorMessage = errorMessage;
+	}
+
+	public boolean isDone()
+	{
+		return phase == Phase.FINISHED || phase == Phase.FAILED;
+	}
+}
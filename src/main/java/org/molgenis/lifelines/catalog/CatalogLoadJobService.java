@@ -0,0 +1,198 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+import org.molgenis.catalog.UnknownCatalogException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Loads catalogs in the background. Submitting a load returns a job immediately, the job reports the progress of the
+ * load while it runs on one of the job threads. Each load runs in its own transaction.
+ *
+ * The most recently submitted jobs are kept so that their progress can be requested after they ended.
+ */
+public class CatalogLoadJobService
+{
+	private static final Logger logger = Logger.getLogger(CatalogLoadJobService.class);
+
+	static final int MAX_NR_JOBS = 100;
+
+	private final LifeLinesCatalogManagerService catalogManagerService;
+	private final TransactionTemplate transactionTemplate;
+	private final ExecutorService executorService;
+	private final Map<String, CatalogLoadJob> jobs;
+
+	public CatalogLoadJobService(LifeLinesCatalogManagerService catalogManagerService,
+			PlatformTransactionManager transactionManager, int nrThreads)
+	{
+		if (catalogManagerService == null) throw new IllegalArgumentException("catalogManagerService is null");
+		if (transactionManager == null) throw new IllegalArgumentException("transactionManager is null");
+		if (nrThreads <= 0) throw new IllegalArgumentException("nrThreads must be larger than 0");
+		this.catalogManagerService = catalogManagerService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.executorService = Executors.newFixedThreadPool(nrThreads);
+		this.jobs = new LinkedHashMap<String, CatalogLoadJob>();
+	}
+
+	/**
+	 * Starts loading a catalog in the background
+	 *
+	 * @param id
+	 *            catalog release id
+	 * @return load job
+	 */
+	public CatalogLoadJob loadCatalog(final String id)
+	{
+		final CatalogLoadJob catalogLoadJob = new CatalogLoadJob(id, false);
+		submit(catalogLoadJob, new TransactionCallbackWithoutResult()
+		{
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status)
+			{
+				try
+				{
+					catalogManagerService.loadCatalog(id, catalogLoadJob);
+				}
+				catch (UnknownCatalogException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		return catalogLoadJob;
+	}
+
+	/**
+	 * Starts loading the changes of a catalog into the loaded catalog in the background
+	 *
+	 * @param id
+	 *            catalog release id
+	 * @param previousId
+	 *            catalog release id of a loaded previous release to load the changes into if this release is not
+	 *            loaded, null to load this release from scratch if it is not loaded
+	 * @return load job
+	 */
+	public CatalogLoadJob reloadCatalog(final String id, final String previousId)
+	{
+		final CatalogLoadJob catalogLoadJob = new CatalogLoadJob(id, false);
+		submit(catalogLoadJob, new TransactionCallbackWithoutResult()
+		{
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status)
+			{
+				try
+				{
+					catalogManagerService.reloadCatalog(id, previousId, catalogLoadJob);
+				}
+				catch (UnknownCatalogException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		return catalogLoadJob;
+	}
+
+	/**
+	 * Starts loading the catalog of a study definition in the background
+	 *
+	 * @param id
+	 *            study definition id
+	 * @return load job
+	 */
+	public CatalogLoadJob loadCatalogOfStudyDefinition(final String id)
+	{
+		final CatalogLoadJob catalogLoadJob = new CatalogLoadJob(id, true);
+		submit(catalogLoadJob, new TransactionCallbackWithoutResult()
+		{
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status)
+			{
+				try
+				{
+					catalogManagerService.loadCatalogOfStudyDefinition(id, catalogLoadJob);
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		return catalogLoadJob;
+	}
+
+	/**
+	 * Returns the job with the given id, null if the job does not exist
+	 *
+	 * @param jobId
+	 * @return
+	 */
+	public synchronized CatalogLoadJob getJob(String jobId)
+	{
+		return jobs.get(jobId);
+	}
+
+	/**
+	 * Returns the most recently submitted jobs, oldest first
+	 *
+	 * @return
+	 */
+	public synchronized List<CatalogLoadJob> getJobs()
+	{
+		return new ArrayList<CatalogLoadJob>(jobs.values());
+	}
+
+	public void shutdown()
+	{
+		executorService.shutdownNow();
+	}
+
+	private void submit(final CatalogLoadJob catalogLoadJob, final TransactionCallbackWithoutResult transactionCallback)
+	{
+		addJob(catalogLoadJob);
+		executorService.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					transactionTemplate.execute(transactionCallback);
+
+					// catalogs are indexed after the transaction committed, the indexer ends these jobs
+					if (catalogLoadJob.getPhase() != CatalogLoadJob.Phase.INDEX && !catalogLoadJob.isDone())
+					{
+						catalogLoadJob.setPhase(CatalogLoadJob.Phase.FINISHED);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					logger.error("catalog load job [" + catalogLoadJob.getId() + "] failed", e);
+					catalogLoadJob.setErrorMessage(e.getMessage());
+					catalogLoadJob.setPhase(CatalogLoadJob.Phase.FAILED);
+				}
+			}
+		});
+	}
+
+	private synchronized void addJob(CatalogLoadJob catalogLoadJob)
+	{
+		jobs.put(catalogLoadJob.getId(), catalogLoadJob);
+
+		// forget the oldest ended jobs
+		for (Iterator<CatalogLoadJob> it = jobs.values().iterator(); jobs.size() > MAX_NR_JOBS && it.hasNext();)
+		{
+			if (it.next().isDone()) it.remove();
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Iterables;
+
+/**
+ * Merges a converted catalog into a loaded catalog, the loaded catalog can be of another catalog release. Protocols
+ * and features are matched on their identifier without the catalog release id (see MeasurementIdConverter and
+ * ObservationIdConverter), protocols and features with a generated (random) identifier are matched on their name within
+ * their parent protocol. Unmatched entities are inserted, changed entities are updated and loaded protocols that no
+ * longer exist in the converted catalog are deactivated. Features can not be deactivated, loaded features that no
+ * longer exist are deleted with their categories unless study data refers to them. Matched entities take the
+ * identifiers of the converted catalog, so that the merged catalog is identified as the catalog of the converted
+ * release.
+ *
+ * Existing entities are only changed after all new entities have been written so that the persistence context never
+ * contains existing entities referring to unsaved entities.
+ */
+class CatalogMerger
+{
+	private static final Pattern GENERATED_IDENTIFIER_PATTERN = Pattern
+			.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+	private static final int QUERY_SIZE = 1000;
+	private static final String ROOT_KEY = "";
+
+	private final DataService dataService;
+	private final CatalogWriter catalogWriter;
+
+	private final Map<String, Protocol> existingProtocols;
+	private final Map<String, ObservableFeature> existingFeatures;
+	private final Map<Integer, List<Category>> existingCategories;
+	private final Map<ObservableFeature, List<Category>> newCategories;
+
+	private final CatalogEntityList insertEntities;
+	private final List<ProtocolUpdate> protocolUpdates;
+	private final List<FeatureUpdate> featureUpdates;
+	private final List<Category> categoryUpdates;
+	private final Set<ObservableFeature> mergedFeatures;
+	private final Set<ObservableFeature> removedFeatures;
+
+	private String existingCatalogReleaseId;
+	private String catalogReleaseId;
+	private int nrInserts;
+	private int nrDeactivations;
+	private int nrDeletions;
+
+	public CatalogMerger(DataService dataService, CatalogWriter catalogWriter)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (catalogWriter == null) throw new IllegalArgumentException("catalogWriter is null");
+		this.dataService = dataService;
+		this.catalogWriter = catalogWriter;
+		this.existingProtocols = new HashMap<String, Protocol>();
+		this.existingFeatures = new HashMap<String, ObservableFeature>();
+		this.existingCategories = new HashMap<Integer, List<Category>>();
+		this.newCategories = new IdentityHashMap<ObservableFeature, List<Category>>();
+		this.insertEntities = new CatalogEntityList();
+		this.protocolUpdates = new ArrayList<ProtocolUpdate>();
+		this.featureUpdates = new ArrayList<FeatureUpdate>();
+		this.categoryUpdates = new ArrayList<Category>();
+		this.mergedFeatures = Collections.newSetFromMap(new IdentityHashMap<ObservableFeature, Boolean>());
+		this.removedFeatures = Collections.newSetFromMap(new IdentityHashMap<ObservableFeature, Boolean>());
+	}
+
+	/**
+	 * Merges the converted catalog into the loaded catalog
+	 *
+	 * @param existingRootProtocol
+	 *            root protocol of the loaded catalog
+	 * @param existingCatalogReleaseId
+	 *            catalog release id of the loaded catalog
+	 * @param rootProtocol
+	 *            root protocol of the converted catalog
+	 * @param catalogReleaseId
+	 *            catalog release id of the converted catalog
+	 * @param catalogEntities
+	 *            entities of the converted catalog
+	 */
+	public void merge(Protocol existingRootProtocol, String existingCatalogReleaseId, Protocol rootProtocol,
+			String catalogReleaseId, CatalogEntityList catalogEntities)
+	{
+		this.existingCatalogReleaseId = existingCatalogReleaseId;
+		this.catalogReleaseId = catalogReleaseId;
+
+		indexExistingProtocol(existingRootProtocol, null);
+		indexExistingCategories();
+		for (Category category : catalogEntities.getCategories())
+		{
+			List<Category> categories = newCategories.get(category.getObservableFeature());
+			if (categories == null)
+			{
+				categories = new ArrayList<Category>();
+				newCategories.put(category.getObservableFeature(), categories);
+			}
+			categories.add(category);
+		}
+
+		mergeProtocol(rootProtocol, null, true);
+
+		// write new entities before updating existing entities that refer to them
+		insertEntities.writeTo(catalogWriter);
+		catalogWriter.flush();
+
+		List<Protocol> updatedProtocols = new ArrayList<Protocol>(protocolUpdates.size());
+		for (ProtocolUpdate protocolUpdate : protocolUpdates)
+			updatedProtocols.add(protocolUpdate.apply());
+		List<ObservableFeature> updatedFeatures = new ArrayList<ObservableFeature>(featureUpdates.size());
+		for (FeatureUpdate featureUpdate : featureUpdates)
+			updatedFeatures.add(featureUpdate.apply());
+
+		if (!updatedFeatures.isEmpty()) dataService.update(ObservableFeature.ENTITY_NAME, updatedFeatures);
+		if (!categoryUpdates.isEmpty()) dataService.update(Category.ENTITY_NAME, categoryUpdates);
+		if (!updatedProtocols.isEmpty()) dataService.update(Protocol.ENTITY_NAME, updatedProtocols);
+
+		// protocols no longer refer to removed features
+		removedFeatures.removeAll(mergedFeatures);
+		deleteRemovedFeatures();
+	}
+
+	/**
+	 * Returns the number of inserted entities
+	 *
+	 * @return
+	 */
+	public int getNrInserts()
+	{
+		return nrInserts;
+	}
+
+	/**
+	 * Returns the number of updated entities, including deactivated protocols
+	 *
+	 * @return
+	 */
+	public int getNrUpdates()
+	{
+		return protocolUpdates.size() + featureUpdates.size() + categoryUpdates.size();
+	}
+
+	/**
+	 * Returns the number of deactivated protocols
+	 *
+	 * @return
+	 */
+	public int getNrDeactivations()
+	{
+		return nrDeactivations;
+	}
+
+	/**
+	 * Returns the number of deleted features and categories
+	 *
+	 * @return
+	 */
+	public int getNrDeletions()
+	{
+		return nrDeletions;
+	}
+
+	private void indexExistingProtocol(Protocol protocol, String parentKey)
+	{
+		String key = parentKey != null ? createKey(protocol.getIdentifier(), protocol.getName(), parentKey,
+				existingCatalogReleaseId) : ROOT_KEY;
+		existingProtocols.put(key, protocol);
+
+		List<Protocol> subprotocols = protocol.getSubprotocols();
+		if (subprotocols != null)
+		{
+			for (Protocol subprotocol : subprotocols)
+				indexExistingProtocol(subprotocol, key);
+		}
+		List<ObservableFeature> features = protocol.getFeatures();
+		if (features != null)
+		{
+			for (ObservableFeature feature : features)
+			{
+				String featureKey = createKey(feature.getIdentifier(), feature.getName(), key,
+						existingCatalogReleaseId);
+				existingFeatures.put(featureKey, feature);
+			}
+		}
+	}
+
+	private void indexExistingCategories()
+	{
+		List<Integer> featureIds = new ArrayList<Integer>(existingFeatures.size());
+		for (ObservableFeature feature : existingFeatures.values())
+			featureIds.add(feature.getId());
+
+		for (List<Integer> featureIdsPartition : Iterables.partition(featureIds, QUERY_SIZE))
+		{
+			Iterable<Category> categories = dataService.findAll(Category.ENTITY_NAME,
+					new QueryImpl().in(Category.OBSERVABLEFEATURE, featureIdsPartition), Category.class);
+			for (Category category : categories)
+			{
+				Integer featureId = category.getObservableFeature().getId();
+				List<Category> featureCategories = existingCategories.get(featureId);
+				if (featureCategories == null)
+				{
+					featureCategories = new ArrayList<Category>();
+					existingCategories.put(featureId, featureCategories);
+				}
+				featureCategories.add(category);
+			}
+		}
+	}
+
+	/**
+	 * Merges a converted protocol and its descendants
+	 *
+	 * @return the protocol to refer to from the parent protocol
+	 */
+	private Protocol mergeProtocol(Protocol protocol, String parentKey, boolean root)
+	{
+		String key = !root ? createKey(protocol.getIdentifier(), protocol.getName(), parentKey, catalogReleaseId)
+				: ROOT_KEY;
+
+		List<Protocol> subprotocols = new ArrayList<Protocol>();
+		Set<Protocol> mergedSubprotocols = Collections.newSetFromMap(new IdentityHashMap<Protocol, Boolean>());
+		if (protocol.getSubprotocols() != null)
+		{
+			for (Protocol subprotocol : protocol.getSubprotocols())
+			{
+				Protocol mergedSubprotocol = mergeProtocol(subprotocol, key, false);
+				subprotocols.add(mergedSubprotocol);
+				mergedSubprotocols.add(mergedSubprotocol);
+			}
+		}
+		List<ObservableFeature> features = new ArrayList<ObservableFeature>();
+		if (protocol.getFeatures() != null)
+		{
+			for (ObservableFeature feature : protocol.getFeatures())
+				features.add(mergeFeature(feature, key));
+		}
+
+		Protocol existingProtocol = existingProtocols.get(key);
+		if (existingProtocol == null)
+		{
+			protocol.setSubprotocols(subprotocols);
+			protocol.setFeatures(features);
+			insertEntities.add(protocol);
+			++nrInserts;
+			return protocol;
+		}
+
+		// features of the loaded protocol that were not merged are removed from the catalog
+		if (existingProtocol.getFeatures() != null) removedFeatures.addAll(existingProtocol.getFeatures());
+
+		// keep removed subprotocols, deactivated, so that references to them remain valid
+		if (existingProtocol.getSubprotocols() != null)
+		{
+			for (Protocol existingSubprotocol : existingProtocol.getSubprotocols())
+			{
+				if (!mergedSubprotocols.contains(existingSubprotocol))
+				{
+					subprotocols.add(existingSubprotocol);
+					deactivate(existingSubprotocol);
+				}
+			}
+		}
+
+		String identifier = mergeIdentifier(existingProtocol.getIdentifier(), protocol.getIdentifier());
+		Boolean active = root ? existingProtocol.getActive() : protocol.getActive();
+		if (!Objects.equal(existingProtocol.getIdentifier(), identifier)
+				|| !Objects.equal(existingProtocol.getName(), protocol.getName())
+				|| !Objects.equal(existingProtocol.getActive(), active)
+				|| !equalsByIdentity(existingProtocol.getSubprotocols(), subprotocols)
+				|| !equalsByIdentity(existingProtocol.getFeatures(), features))
+		{
+			protocolUpdates.add(new ProtocolUpdate(existingProtocol, identifier, protocol.getName(), active,
+					subprotocols, features));
+		}
+		return existingProtocol;
+	}
+
+	private void deactivate(Protocol existingProtocol)
+	{
+		if (existingProtocol.getActive() != null && !existingProtocol.getActive().booleanValue()) return;
+
+		List<Protocol> subprotocols = existingProtocol.getSubprotocols();
+		List<ObservableFeature> features = existingProtocol.getFeatures();
+		protocolUpdates.add(new ProtocolUpdate(existingProtocol, existingProtocol.getIdentifier(),
+				existingProtocol.getName(), false,
+				subprotocols != null ? new ArrayList<Protocol>(subprotocols) : new ArrayList<Protocol>(),
+				features != null ? new ArrayList<ObservableFeature>(features) : new ArrayList<ObservableFeature>()));
+		++nrDeactivations;
+	}
+
+	/**
+	 * Merges a converted feature and its categories
+	 *
+	 * @return the feature to refer to from the protocol
+	 */
+	private ObservableFeature mergeFeature(ObservableFeature feature, String protocolKey)
+	{
+		List<Category> categories = newCategories.get(feature);
+		if (categories == null) categories = Collections.emptyList();
+
+		ObservableFeature existingFeature = existingFeatures.get(createKey(feature.getIdentifier(), feature.getName(),
+				protocolKey, catalogReleaseId));
+		if (existingFeature == null)
+		{
+			insertEntities.add(feature);
+			for (Category category : categories)
+				insertEntities.add(category);
+			nrInserts += 1 + categories.size();
+			return feature;
+		}
+		mergedFeatures.add(existingFeature);
+
+		Map<String, Category> existingCategoriesByValueCode = new HashMap<String, Category>();
+		List<Category> featureCategories = existingCategories.get(existingFeature.getId());
+		if (featureCategories != null)
+		{
+			for (Category existingCategory : featureCategories)
+				existingCategoriesByValueCode.put(existingCategory.getValueCode(), existingCategory);
+		}
+		for (Category category : categories)
+		{
+			Category existingCategory = existingCategoriesByValueCode.get(category.getValueCode());
+			if (existingCategory == null)
+			{
+				category.setObservableFeature(existingFeature);
+				insertEntities.add(category);
+				++nrInserts;
+			}
+			else if (!Objects.equal(existingCategory.getName(), category.getName()))
+			{
+				existingCategory.setName(category.getName());
+				categoryUpdates.add(existingCategory);
+			}
+		}
+
+		String identifier = mergeIdentifier(existingFeature.getIdentifier(), feature.getIdentifier());
+		if (!Objects.equal(existingFeature.getIdentifier(), identifier)
+				|| !Objects.equal(existingFeature.getName(), feature.getName())
+				|| !Objects.equal(existingFeature.getDescription(), feature.getDescription())
+				|| !Objects.equal(existingFeature.getDataType(), feature.getDataType())
+				|| existingFeature.getUnit() != feature.getUnit())
+		{
+			OntologyTerm unit = feature.getUnit();
+			if (unit != null && unit.getId() == null) insertEntities.add(unit);
+			featureUpdates.add(new FeatureUpdate(existingFeature, identifier, feature));
+		}
+		return existingFeature;
+	}
+
+	/**
+	 * Deletes the removed features and their categories, features that study data refers to are kept without a
+	 * protocol so that the study data remains valid
+	 */
+	private void deleteRemovedFeatures()
+	{
+		for (List<ObservableFeature> features : Iterables.partition(new ArrayList<ObservableFeature>(removedFeatures),
+				QUERY_SIZE))
+		{
+			List<Integer> featureIds = new ArrayList<Integer>(features.size());
+			for (ObservableFeature feature : features)
+				featureIds.add(feature.getId());
+
+			Set<Integer> referencedFeatureIds = new HashSet<Integer>();
+			if (dataService.count(ObservedValue.ENTITY_NAME, new QueryImpl().in(ObservedValue.FEATURE, featureIds)) > 0)
+			{
+				for (ObservedValue observedValue : dataService.findAll(ObservedValue.ENTITY_NAME,
+						new QueryImpl().in(ObservedValue.FEATURE, featureIds), ObservedValue.class))
+					referencedFeatureIds.add(observedValue.getFeature().getId());
+			}
+
+			List<ObservableFeature> deleteFeatures = new ArrayList<ObservableFeature>(features.size());
+			List<Category> deleteCategories = new ArrayList<Category>();
+			for (ObservableFeature feature : features)
+			{
+				if (referencedFeatureIds.contains(feature.getId())) continue;
+				deleteFeatures.add(feature);
+				List<Category> featureCategories = existingCategories.get(feature.getId());
+				if (featureCategories != null) deleteCategories.addAll(featureCategories);
+			}
+
+			// categories refer to features
+			if (!deleteCategories.isEmpty()) dataService.delete(Category.ENTITY_NAME, deleteCategories);
+			if (!deleteFeatures.isEmpty()) dataService.delete(ObservableFeature.ENTITY_NAME, deleteFeatures);
+			nrDeletions += deleteCategories.size() + deleteFeatures.size();
+		}
+	}
+
+	private static String createKey(String identifier, String name, String parentKey, String catalogReleaseId)
+	{
+		// generated identifiers differ between conversions of the same catalog
+		if (isGenerated(identifier)) return parentKey + '/' + name;
+
+		// measurement protocol identifiers start with the catalog release id, observation protocol and feature
+		// identifiers end with it
+		String measurementPrefix = catalogReleaseId + ':';
+		if (identifier.startsWith(measurementPrefix)) return identifier.substring(measurementPrefix.length());
+		String observationSuffix = '.' + catalogReleaseId;
+		if (identifier.endsWith(observationSuffix))
+		{
+			return identifier.substring(0, identifier.length() - observationSuffix.length());
+		}
+		return identifier;
+	}
+
+	/**
+	 * Returns the identifier of a matched entity: generated identifiers are kept, other identifiers are replaced by
+	 * the identifier of the converted catalog release
+	 */
+	private static String mergeIdentifier(String existingIdentifier, String identifier)
+	{
+		return isGenerated(identifier) ? existingIdentifier : identifier;
+	}
+
+	private static boolean isGenerated(String identifier)
+	{
+		return GENERATED_IDENTIFIER_PATTERN.matcher(identifier).matches();
+	}
+
+	private static <T> boolean equalsByIdentity(List<T> existingEntities, List<T> entities)
+	{
+		if (existingEntities == null) return entities.isEmpty();
+		if (existingEntities.size() != entities.size()) return false;
+		for (int i = 0; i < entities.size(); ++i)
+		{
+			if (existingEntities.get(i) != entities.get(i)) return false;
+		}
+		return true;
+	}
+
+	private static class ProtocolUpdate
+	{
+		private final Protocol protocol;
+		private final String identifier;
+		private final String name;
+		private final Boolean active;
+		private final List<Protocol> subprotocols;
+		private final List<ObservableFeature> features;
+
+		public ProtocolUpdate(Protocol protocol, String identifier, String name, Boolean active,
+				List<Protocol> subprotocols, List<ObservableFeature> features)
+		{
+			this.protocol = protocol;
+			this.identifier = identifier;
+			this.name = name;
+			this.active = active;
+			this.subprotocols = subprotocols;
+			this.features = features;
+		}
+
+		public Protocol apply()
+		{
+			protocol.setIdentifier(identifier);
+			protocol.setName(name);
+			protocol.setActive(active);
+			protocol.setSubprotocols(subprotocols);
+			protocol.setFeatures(features);
+			return protocol;
+		}
+	}
+
+	private static class FeatureUpdate
+	{
+		private final ObservableFeature existingFeature;
+		private final String identifier;
+		private final ObservableFeature feature;
+
+		public FeatureUpdate(ObservableFeature existingFeature, String identifier, ObservableFeature feature)
+		{
+			this.existingFeature = existingFeature;
+			this.identifier = identifier;
+			this.feature = feature;
+		}
+
+		public ObservableFeature apply()
+		{
+			existingFeature.setIdentifier(identifier);
+			existingFeature.setName(feature.getName());
+			existingFeature.setDescription(feature.getDescription());
+			existingFeature.setDataType(feature.getDataType());
+			existingFeature.setUnit(feature.getUnit());
+			return existingFeature;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package org.molgenis.lifelines.catalog;
+
+/**
+ * Folder or item of a catalog tree, without its children
+ */
+public class CatalogNode
+{
+	private final String id;
+	private final String name;
+	private final String description;
+	private final boolean folder;
+	private final int nrChildren;
+
+	public CatalogNode(String id, String name, String description, boolean folder, int nrChildren)
+	{
+		if (id == null) throw new IllegalArgumentException("id is null");
+		this.id = id;
+		this.name = name;
+		this.description = description;
+		this.folder = folder;
+		this.nrChildren = nrChildren;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getDescription()
+	{
+		return description;
+	}
+
+	public boolean isFolder()
+	{
+		return folder;
+	}
+
+	/**
+	 * Returns the number of child folders and items of this node
+	 *
+	 * @return
+	 */
+	public int getNrChildren()
+	{
+		return nrChildren;
+	}
+}
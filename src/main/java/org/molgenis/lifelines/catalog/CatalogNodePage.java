@@ -0,0 +1,41 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.List;
+
+/**
+ * Page of the children of a catalog tree node
+ */
+public class CatalogNodePage
+{
+	private final List<CatalogNode> nodes;
+	private final int offset;
+	private final int total;
+
+	public CatalogNodePage(List<CatalogNode> nodes, int offset, int total)
+	{
+		if (nodes == null) throw new IllegalArgumentException("nodes is null");
+		this.nodes = nodes;
+		this.offset = offset;
+		this.total = total;
+	}
+
+	public List<CatalogNode> getNodes()
+	{
+		return nodes;
+	}
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Returns the total number of children of the parent node
+	 *
+	 * @return
+	 */
+	public int getTotal()
+	{
+		return total;
+	}
+}
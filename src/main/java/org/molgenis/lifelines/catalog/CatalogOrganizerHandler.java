@@ -0,0 +1,41 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.List;
+
+import org.hl7.v3.REPCMT000100UV01Organizer;
+
+/**
+ * Receives the organizers of a catalog in document order. The handler decides up to which depth organizers are
+ * reported by their header only and from which depth on a complete organizer subtree is reported.
+ */
+public interface CatalogOrganizerHandler
+{
+	/**
+	 * Returns whether the organizer with the given ancestors must be reported as a complete subtree
+	 *
+	 * @param path
+	 *            headers of the ancestor organizers, starting at the top level organizer
+	 * @return
+	 */
+	boolean isSubtree(List<CatalogOrganizerHeader> path);
+
+	/**
+	 * @param path
+	 *            headers of the ancestor organizers followed by the header of the started organizer
+	 */
+	void startOrganizer(List<CatalogOrganizerHeader> path);
+
+	/**
+	 * @param path
+	 *            headers of the ancestor organizers
+	 * @param organizer
+	 *            complete organizer subtree
+	 */
+	void organizer(List<CatalogOrganizerHeader> path, REPCMT000100UV01Organizer organizer);
+
+	/**
+	 * @param path
+	 *            headers of the ancestor organizers followed by the header of the ended organizer
+	 */
+	void endOrganizer(List<CatalogOrganizerHeader> path);
+}
@@ -0,0 +1,29 @@
+package org.molgenis.lifelines.catalog;
+
+import org.hl7.v3.CD;
+
+/**
+ * Code and availability of a catalog organizer, available before the components of the organizer are read
+ */
+public class CatalogOrganizerHeader
+{
+	private final CD code;
+	private final boolean available;
+
+	public CatalogOrganizerHeader(CD code, boolean available)
+	{
+		if (code == null) throw new IllegalArgumentException("code is null");
+		this.code = code;
+		this.available = available;
+	}
+
+	public CD getCode()
+	{
+		return code;
+	}
+
+	public boolean isAvailable()
+	{
+		return available;
+	}
+}
@@ -0,0 +1,154 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.molgenis.catalog.CatalogMeta;
+
+/**
+ * Caches the catalog releases of the Generic Layer. The releases are retrieved when first requested, after the time to
+ * live expired the cached releases are returned while the releases are retrieved again in the background. Releases are
+ * retrieved while the caller waits only if no releases were cached yet or if the cached releases are older than twice
+ * the time to live, e.g. because background retrieval failed.
+ *
+ * The cache is safe for use by multiple threads.
+ */
+public class CatalogReleaseCache
+{
+	private static final Logger logger = Logger.getLogger(CatalogReleaseCache.class);
+
+	private final Callable<Iterable<CatalogMeta>> catalogReleasesLoader;
+	private final long timeToLive;
+	private final ExecutorService refreshExecutor;
+	private final AtomicBoolean refreshing;
+
+	private volatile CatalogReleases catalogReleases;
+
+	/**
+	 * @param catalogReleasesLoader
+	 *            retrieves the catalog releases from the Generic Layer
+	 * @param timeToLive
+	 *            milliseconds after which cached catalog releases are refreshed
+	 */
+	public CatalogReleaseCache(Callable<Iterable<CatalogMeta>> catalogReleasesLoader, long timeToLive)
+	{
+		if (catalogReleasesLoader == null) throw new IllegalArgumentException("catalogReleasesLoader is null");
+		if (timeToLive <= 0) throw new IllegalArgumentException("timeToLive must be larger than 0");
+		this.catalogReleasesLoader = catalogReleasesLoader;
+		this.timeToLive = timeToLive;
+		this.refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				// do not keep the application alive for a refresh
+				Thread thread = new Thread(runnable, "catalog-release-cache-refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.refreshing = new AtomicBoolean();
+	}
+
+	public List<CatalogMeta> getCatalogReleases()
+	{
+		return get().list;
+	}
+
+	/**
+	 * Returns the catalog release with the given id, null if the release does not exist
+	 *
+	 * @param id
+	 * @return
+	 */
+	public CatalogMeta getCatalogRelease(String id)
+	{
+		return get().index.get(id);
+	}
+
+	public void shutdown()
+	{
+		refreshExecutor.shutdownNow();
+	}
+
+	private CatalogReleases get()
+	{
+		CatalogReleases currentCatalogReleases = catalogReleases;
+		long age = currentCatalogReleases != null ? System.currentTimeMillis() - currentCatalogReleases.creationTime
+				: Long.MAX_VALUE;
+		if (age > 2 * timeToLive)
+		{
+			currentCatalogReleases = load();
+			catalogReleases = currentCatalogReleases;
+		}
+		else if (age > timeToLive && refreshing.compareAndSet(false, true))
+		{
+			refreshExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						catalogReleases = load();
+					}
+					catch (RuntimeException e)
+					{
+						logger.error("error refreshing catalog releases", e);
+					}
+					finally
+					{
+						refreshing.set(false);
+					}
+				}
+			});
+		}
+		return currentCatalogReleases;
+	}
+
+	private CatalogReleases load()
+	{
+		try
+		{
+			return new CatalogReleases(catalogReleasesLoader.call());
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class CatalogReleases
+	{
+		private final long creationTime;
+		private final List<CatalogMeta> list;
+		private final Map<String, CatalogMeta> index;
+
+		public CatalogReleases(Iterable<CatalogMeta> catalogMetas)
+		{
+			this.creationTime = System.currentTimeMillis();
+			List<CatalogMeta> list = new ArrayList<CatalogMeta>();
+			Map<String, CatalogMeta> index = new HashMap<String, CatalogMeta>();
+			for (CatalogMeta catalogMeta : catalogMetas)
+			{
+				list.add(catalogMeta);
+				if (!index.containsKey(catalogMeta.getId())) index.put(catalogMeta.getId(), catalogMeta);
+			}
+			this.list = Collections.unmodifiableList(list);
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.molgenis.lifelines.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+
+/**
+ * Stores retrieved catalogs on disk as gzip compressed XML, one file per catalog release. A snapshot is written to a
+ * temporary file first and then moved in place so that a snapshot file is either complete or absent. Snapshots that
+ * can not be read (e.g. corrupted files left behind after a crash) are deleted and reported as absent.
+ */
+public class CatalogSnapshotStore
+{
+	private static final Logger logger = Logger.getLogger(CatalogSnapshotStore.class);
+
+	private static final QName QNAME_ORGANIZER = new QName("urn:hl7-org:v3", "organizer");
+	private static final String FILE_PREFIX = "catalog_";
+	private static final String FILE_EXTENSION = ".xml.gz";
+
+	private final File directory;
+	private final Hl7JaxbCodec hl7JaxbCodec;
+
+	public CatalogSnapshotStore(File directory)
+	{
+		this(directory, new Hl7JaxbCodec());
+	}
+
+	public CatalogSnapshotStore(File directory, Hl7JaxbCodec hl7JaxbCodec)
+	{
+		if (directory == null) throw new IllegalArgumentException("directory is null");
+		if (hl7JaxbCodec == null) throw new IllegalArgumentException("hl7JaxbCodec is null");
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IllegalArgumentException("directory [" + directory + "] does not exist and cannot be created");
+		}
+		this.directory = directory;
+		this.hl7JaxbCodec = hl7JaxbCodec;
+	}
+
+	/**
+	 * Returns the stored catalog of the given catalog release, null if no valid snapshot exists
+	 *
+	 * @param catalogReleaseId
+	 * @return
+	 */
+	public REPCMT000100UV01Organizer read(String catalogReleaseId)
+	{
+		File file = getFile(catalogReleaseId);
+		if (!file.isFile()) return null;
+
+		InputStream is = null;
+		try
+		{
+			// reading the stream up to the end validates the gzip checksum
+			is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return hl7JaxbCodec.getUnmarshaller()
+					.unmarshal(new StreamSource(is), REPCMT000100UV01Organizer.class).getValue();
+		}
+		catch (IOException e)
+		{
+			logger.warn("deleting invalid catalog snapshot [" + file + "]", e);
+			delete(file);
+			return null;
+		}
+		catch (JAXBException e)
+		{
+			logger.warn("deleting invalid catalog snapshot [" + file + "]", e);
+			delete(file);
+			return null;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Stores the catalog of the given catalog release, replaces an existing snapshot
+	 *
+	 * @param catalogReleaseId
+	 * @param catalog
+	 */
+	public void write(String catalogReleaseId, REPCMT000100UV01Organizer catalog)
+	{
+		File file = getFile(catalogReleaseId);
+		File tmpFile = null;
+		OutputStream os = null;
+		try
+		{
+			tmpFile = File.createTempFile(FILE_PREFIX, FILE_EXTENSION, directory);
+			os = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			hl7JaxbCodec.getMarshaller().marshal(
+					new JAXBElement<REPCMT000100UV01Organizer>(QNAME_ORGANIZER, REPCMT000100UV01Organizer.class,
+							catalog), os);
+			os.close();
+			os = null;
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			// a missing snapshot only costs a catalog retrieval
+			logger.warn("error writing catalog snapshot [" + file + "]", e);
+		}
+		catch (JAXBException e)
+		{
+			logger.warn("error writing catalog snapshot [" + file + "]", e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(os);
+			if (tmpFile != null && tmpFile.exists()) delete(tmpFile);
+		}
+	}
+
+	/**
+	 * Deletes the stored catalog of the given catalog release
+	 *
+	 * @param catalogReleaseId
+	 */
+	public void delete(String catalogReleaseId)
+	{
+		File file = getFile(catalogReleaseId);
+		if (file.exists()) delete(file);
+	}
+
+	private File getFile(String catalogReleaseId)
+	{
+		// release ids are used in file names, replace characters that are not safe in file names
+		return new File(directory, FILE_PREFIX + catalogReleaseId.replaceAll("[^a-zA-Z0-9._-]", "_") + FILE_EXTENSION);
+	}
+
+	private void delete(File file)
+	{
+		if (!file.delete()) logger.warn("error deleting catalog snapshot [" + file + "]");
+	}
+}
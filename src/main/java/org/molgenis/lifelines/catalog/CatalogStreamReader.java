@@ -0,0 +1,283 @@
+package org.molgenis.lifelines.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.RequestWrapper;
+
+import nl.umcg.hl7.service.catalog.GenericLayerCatalogService;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.log4j.Logger;
+import org.hl7.v3.CD;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+import org.molgenis.lifelines.utils.OutputStreamHttpEntity;
+
+/**
+ * Reads a catalog from the Generic Layer catalog service without materializing the whole catalog in memory. The
+ * getCatalog response is read with StAX and only the organizer subtrees requested by a {@link CatalogOrganizerHandler}
+ * are unmarshalled, one at a time.
+ *
+ * Organizers are reported relative to the catalog element of the response, the catalog element itself is not
+ * reported. The SOAP request is created from the JAX-WS annotations of {@link GenericLayerCatalogService} and sent to
+ * the endpoint address of the given service port.
+ */
+public class CatalogStreamReader
+{
+	private static final Logger logger = Logger.getLogger(CatalogStreamReader.class);
+
+	private static final String SOAP_ENVELOPE_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String ELEMENT_ORGANIZER = "organizer";
+	private static final String ELEMENT_COMPONENT = "component";
+	private static final String ELEMENT_CODE = "code";
+	private static final String ELEMENT_EFFECTIVE_TIME = "effectiveTime";
+
+	private final GenericLayerCatalogService genericLayerCatalogService;
+	private final HttpClient httpClient;
+	private final Hl7JaxbCodec hl7JaxbCodec;
+
+	public CatalogStreamReader(GenericLayerCatalogService genericLayerCatalogService, HttpClient httpClient,
+			Hl7JaxbCodec hl7JaxbCodec)
+	{
+		if (genericLayerCatalogService == null) throw new IllegalArgumentException("genericLayerCatalogService is null");
+		if (httpClient == null) throw new IllegalArgumentException("httpClient is null");
+		if (hl7JaxbCodec == null) throw new IllegalArgumentException("hl7JaxbCodec is null");
+		this.genericLayerCatalogService = genericLayerCatalogService;
+		this.httpClient = httpClient;
+		this.hl7JaxbCodec = hl7JaxbCodec;
+	}
+
+	public void readCatalog(String catalogReleaseId, boolean useOntology, CatalogOrganizerHandler handler)
+	{
+		final Method method = getServiceMethod("getCatalog");
+		final Object[] args = new Object[]
+		{ catalogReleaseId, null, useOntology };
+
+		HttpPost httpPost = new HttpPost(getEndpointAddress());
+		httpPost.setHeader("Content-Type", "text/xml; charset=utf-8");
+		httpPost.setHeader("SOAPAction", '"' + method.getAnnotation(WebMethod.class).action() + '"');
+		httpPost.setEntity(new OutputStreamHttpEntity()
+		{
+			@Override
+			public void writeTo(OutputStream outstream) throws IOException
+			{
+				try
+				{
+					writeRequest(method, args, outstream);
+				}
+				catch (XMLStreamException e)
+				{
+					throw new IOException(e);
+				}
+				outstream.close();
+			}
+		});
+
+		InputStream xmlStream = null;
+		try
+		{
+			HttpResponse response = httpClient.execute(httpPost);
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode < 200 || statusCode > 299) throw new IOException("Error retrieving catalog ["
+					+ catalogReleaseId + "] (statuscode " + statusCode + ")");
+			xmlStream = response.getEntity().getContent();
+			readOrganizers(XMLInputFactory.newInstance().createXMLStreamReader(xmlStream, "UTF-8"), handler);
+		}
+		catch (IOException e)
+		{
+			httpPost.abort();
+			logger.error("", e);
+			throw new RuntimeException(e);
+		}
+		catch (XMLStreamException e)
+		{
+			httpPost.abort();
+			logger.error("", e);
+			throw new RuntimeException(e);
+		}
+		catch (JAXBException e)
+		{
+			httpPost.abort();
+			logger.error("", e);
+			throw new RuntimeException(e);
+		}
+		catch (RuntimeException e)
+		{
+			httpPost.abort();
+			throw e;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(xmlStream);
+		}
+	}
+
+	/**
+	 * Reads the organizers from the given reader and reports them to the handler
+	 *
+	 * @param reader
+	 * @param handler
+	 * @throws XMLStreamException
+	 * @throws JAXBException
+	 */
+	void readOrganizers(XMLStreamReader reader, CatalogOrganizerHandler handler) throws XMLStreamException,
+			JAXBException
+	{
+		Unmarshaller unmarshaller = hl7JaxbCodec.getUnmarshaller();
+
+		List<CatalogOrganizerHeader> path = new ArrayList<CatalogOrganizerHeader>();
+		Deque<OrganizerState> organizerStates = new ArrayDeque<OrganizerState>();
+		int depth = 0;
+		while (reader.hasNext())
+		{
+			if (reader.isStartElement())
+			{
+				String localName = reader.getLocalName();
+				OrganizerState organizerState = organizerStates.peek();
+				boolean organizerChild = organizerState != null && depth == organizerState.depth;
+
+				if (localName.equals(ELEMENT_ORGANIZER))
+				{
+					if (handler.isSubtree(Collections.unmodifiableList(path)))
+					{
+						// moves the reader to the event after the end of the organizer
+						REPCMT000100UV01Organizer organizer = unmarshaller.unmarshal(reader,
+								REPCMT000100UV01Organizer.class).getValue();
+						handler.organizer(Collections.unmodifiableList(path), organizer);
+						continue;
+					}
+					organizerStates.push(new OrganizerState(depth + 1));
+				}
+				else if (organizerChild && localName.equals(ELEMENT_CODE))
+				{
+					organizerState.code = unmarshaller.unmarshal(reader, CD.class).getValue();
+					continue;
+				}
+				else if (organizerChild && localName.equals(ELEMENT_EFFECTIVE_TIME))
+				{
+					// EffectiveTime.low is set when group is unavailable.
+					organizerState.available = false;
+				}
+				else if (organizerChild && localName.equals(ELEMENT_COMPONENT) && !organizerState.started)
+				{
+					startOrganizer(organizerState, path, handler);
+				}
+				++depth;
+			}
+			else if (reader.isEndElement())
+			{
+				OrganizerState organizerState = organizerStates.peek();
+				if (organizerState != null && depth == organizerState.depth)
+				{
+					if (!organizerState.started) startOrganizer(organizerState, path, handler);
+					handler.endOrganizer(Collections.unmodifiableList(path));
+					path.remove(path.size() - 1);
+					organizerStates.pop();
+				}
+				--depth;
+			}
+			reader.next();
+		}
+	}
+
+	private void startOrganizer(OrganizerState organizerState, List<CatalogOrganizerHeader> path,
+			CatalogOrganizerHandler handler)
+	{
+		if (organizerState.code == null) throw new RuntimeException("Expected code for organizer");
+		path.add(new CatalogOrganizerHeader(organizerState.code, organizerState.available));
+		organizerState.started = true;
+		handler.startOrganizer(Collections.unmodifiableList(path));
+	}
+
+	private void writeRequest(Method method, Object[] args, OutputStream outstream) throws XMLStreamException
+	{
+		RequestWrapper requestWrapper = method.getAnnotation(RequestWrapper.class);
+		if (requestWrapper == null) throw new RuntimeException("Missing request wrapper for method ["
+				+ method.getName() + "]");
+
+		XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outstream, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeStartElement("s", "Envelope", SOAP_ENVELOPE_NAMESPACE);
+		writer.writeNamespace("s", SOAP_ENVELOPE_NAMESPACE);
+		writer.writeStartElement("s", "Body", SOAP_ENVELOPE_NAMESPACE);
+		writer.writeStartElement("", requestWrapper.localName(), requestWrapper.targetNamespace());
+		writer.writeDefaultNamespace(requestWrapper.targetNamespace());
+
+		Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		for (int i = 0; i < args.length; ++i)
+		{
+			if (args[i] == null) continue;
+			WebParam webParam = getWebParam(parameterAnnotations[i]);
+			writer.writeStartElement(webParam.targetNamespace(), webParam.name());
+			writer.writeCharacters(args[i].toString());
+			writer.writeEndElement();
+		}
+
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.close();
+	}
+
+	private WebParam getWebParam(Annotation[] annotations)
+	{
+		for (Annotation annotation : annotations)
+		{
+			if (annotation instanceof WebParam) return (WebParam) annotation;
+		}
+		throw new RuntimeException("Missing web parameter annotation");
+	}
+
+	private Method getServiceMethod(String name)
+	{
+		for (Method method : GenericLayerCatalogService.class.getMethods())
+		{
+			if (method.getName().equals(name)) return method;
+		}
+		throw new RuntimeException("Unknown catalog service method [" + name + "]");
+	}
+
+	private String getEndpointAddress()
+	{
+		Object endpointAddress = ((BindingProvider) genericLayerCatalogService).getRequestContext().get(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
+		if (endpointAddress == null) throw new RuntimeException("Unknown catalog service endpoint address");
+		return endpointAddress.toString();
+	}
+
+	private static class OrganizerState
+	{
+		private final int depth;
+		private CD code;
+		private boolean available = true;
+		private boolean started;
+
+		public OrganizerState(int depth)
+		{
+			this.depth = depth;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.molgenis.catalog.CatalogFolder;
+import org.molgenis.catalog.CatalogItem;
+import org.molgenis.catalog.UnknownCatalogException;
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Provides the children of catalog tree nodes one page at a time so that a catalog tree can be expanded on demand.
+ * Activated catalogs are read from their protocol tree in the database, other catalogs from their (cached) retrieved
+ * catalog.
+ *
+ * Child folders precede child items. Node ids of activated catalogs are the path of protocol ids from the catalog to
+ * the protocol or feature, so that a node id only resolves to protocols of the requested catalog. Folder and item ids
+ * of other catalogs are not unique, e.g. the same measurement occurs in each cohort, their node ids are therefore the
+ * path of child indices from the catalog to the node.
+ */
+public class CatalogTreeService
+{
+	static final String NODE_ID_PREFIX_PROTOCOL = "protocol_";
+	static final String NODE_ID_PREFIX_FEATURE = "feature_";
+	static final String NODE_ID_PREFIX_FOLDER = "folder_";
+	static final String NODE_ID_PREFIX_ITEM = "item_";
+	private static final char NODE_ID_PATH_SEPARATOR = '.';
+
+	private final LifeLinesCatalogManagerService catalogManagerService;
+	private final DataService dataService;
+
+	public CatalogTreeService(LifeLinesCatalogManagerService catalogManagerService, DataService dataService)
+	{
+		if (catalogManagerService == null) throw new IllegalArgumentException("catalogManagerService is null");
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		this.catalogManagerService = catalogManagerService;
+		this.dataService = dataService;
+	}
+
+	/**
+	 * Returns a page of the children of a catalog tree node
+	 *
+	 * @param catalogId
+	 *            catalog release id
+	 * @param parentId
+	 *            node id of the parent, null for the children of the catalog
+	 * @param offset
+	 *            index of the first child to return
+	 * @param limit
+	 *            maximum number of children to return
+	 * @return
+	 * @throws UnknownCatalogException
+	 */
+	@Transactional(readOnly = true)
+	public CatalogNodePage getChildren(String catalogId, String parentId, int offset, int limit)
+			throws UnknownCatalogException
+	{
+		if (offset < 0) throw new IllegalArgumentException("offset is negative");
+		if (limit <= 0) throw new IllegalArgumentException("limit must be larger than 0");
+
+		if (catalogManagerService.isCatalogActivated(catalogId))
+		{
+			return getProtocolChildren(getProtocol(catalogId, parentId), parentId, offset, limit);
+		}
+		else
+		{
+			return getFolderChildren(getFolder(catalogId, parentId), parentId, offset, limit);
+		}
+	}
+
+	private Protocol getProtocol(String catalogId, String parentId) throws UnknownCatalogException
+	{
+		Protocol protocol = dataService.findOne(Protocol.ENTITY_NAME,
+				new QueryImpl().eq(Protocol.IDENTIFIER, CatalogIdConverter.catalogIdToOmxIdentifier(catalogId)),
+				Protocol.class);
+		if (protocol == null) throw new UnknownCatalogException("Unknown catalog [" + catalogId + "]");
+		if (parentId == null) return protocol;
+		if (!parentId.startsWith(NODE_ID_PREFIX_PROTOCOL))
+		{
+			throw new UnknownCatalogException("Unknown catalog node [" + parentId + "]");
+		}
+
+		// follow the path of protocol ids from the catalog root protocol to the protocol
+		String path = parentId.substring(NODE_ID_PREFIX_PROTOCOL.length());
+		for (String id : Splitter.on(NODE_ID_PATH_SEPARATOR).split(path))
+		{
+			Protocol subprotocol = null;
+			for (Protocol aSubprotocol : emptyIfNull(protocol.getSubprotocols()))
+			{
+				if (aSubprotocol.getId().toString().equals(id))
+				{
+					subprotocol = aSubprotocol;
+					break;
+				}
+			}
+			if (subprotocol == null) throw new UnknownCatalogException("Unknown catalog node [" + parentId + "]");
+			protocol = subprotocol;
+		}
+		return protocol;
+	}
+
+	private CatalogFolder getFolder(String catalogId, String parentId) throws UnknownCatalogException
+	{
+		CatalogFolder folder = catalogManagerService.getCatalog(catalogId);
+		if (parentId == null) return folder;
+		if (!parentId.startsWith(NODE_ID_PREFIX_FOLDER))
+		{
+			throw new UnknownCatalogException("Unknown catalog node [" + parentId + "]");
+		}
+
+		// follow the path of child indices from the catalog to the folder
+		String path = parentId.substring(NODE_ID_PREFIX_FOLDER.length());
+		for (String index : Splitter.on(NODE_ID_PATH_SEPARATOR).split(path))
+		{
+			List<CatalogFolder> children = folder.getChildren();
+			int childIndex;
+			try
+			{
+				childIndex = Integer.parseInt(index);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new UnknownCatalogException("Unknown catalog node [" + parentId + "]");
+			}
+			if (childIndex < 0 || childIndex >= children.size())
+			{
+				throw new UnknownCatalogException("Unknown catalog node [" + parentId + "]");
+			}
+			folder = children.get(childIndex);
+		}
+		return folder;
+	}
+
+	/**
+	 * Returns a page of the subprotocols and features of a protocol. A protocol tree is stored as the subprotocol and
+	 * feature lists of the parent protocols, subprotocols and features do not refer to their parent. The children of
+	 * a protocol can therefore not be selected or counted with a query, the page is taken from the lists of the
+	 * protocol instead.
+	 */
+	private CatalogNodePage getProtocolChildren(Protocol protocol, String protocolNodeId, int offset, int limit)
+	{
+		List<Protocol> subprotocols = emptyIfNull(protocol.getSubprotocols());
+		List<ObservableFeature> features = emptyIfNull(protocol.getFeatures());
+		String protocolPath = protocolNodeId != null ? protocolNodeId.substring(NODE_ID_PREFIX_PROTOCOL.length())
+				+ NODE_ID_PATH_SEPARATOR : "";
+
+		List<CatalogNode> nodes = new ArrayList<CatalogNode>();
+		for (Protocol subprotocol : page(subprotocols, offset, limit))
+		{
+			int nrChildren = emptyIfNull(subprotocol.getSubprotocols()).size()
+					+ emptyIfNull(subprotocol.getFeatures()).size();
+			nodes.add(new CatalogNode(NODE_ID_PREFIX_PROTOCOL + protocolPath + subprotocol.getId(),
+					subprotocol.getName(), subprotocol.getDescription(), true, nrChildren));
+		}
+		int featureOffset = Math.max(0, offset - subprotocols.size());
+		for (ObservableFeature feature : page(features, featureOffset, limit - nodes.size()))
+		{
+			nodes.add(new CatalogNode(NODE_ID_PREFIX_FEATURE + protocolPath + feature.getId(), feature.getName(),
+					feature.getDescription(), false, 0));
+		}
+		return new CatalogNodePage(nodes, offset, subprotocols.size() + features.size());
+	}
+
+	private CatalogNodePage getFolderChildren(CatalogFolder folder, String folderId, int offset, int limit)
+	{
+		List<CatalogFolder> children = folder.getChildren();
+		List<CatalogItem> items = folder.getItems();
+		String folderPath = folderId != null ? folderId.substring(NODE_ID_PREFIX_FOLDER.length())
+				+ NODE_ID_PATH_SEPARATOR : "";
+
+		List<CatalogNode> nodes = new ArrayList<CatalogNode>();
+		int childIndex = offset;
+		for (CatalogFolder child : page(children, offset, limit))
+		{
+			int nrChildren = child.getChildren().size() + child.getItems().size();
+			nodes.add(new CatalogNode(NODE_ID_PREFIX_FOLDER + folderPath + childIndex++, child.getName(),
+					child.getDescription(), true, nrChildren));
+		}
+		int itemOffset = Math.max(0, offset - children.size());
+		int itemIndex = itemOffset;
+		for (CatalogItem item : page(items, itemOffset, limit - nodes.size()))
+		{
+			nodes.add(new CatalogNode(NODE_ID_PREFIX_ITEM + folderPath + itemIndex++, item.getName(),
+					item.getDescription(), false, 0));
+		}
+		return new CatalogNodePage(nodes, offset, children.size() + items.size());
+	}
+
+	private static <T> List<T> page(List<T> list, int offset, int limit)
+	{
+		if (offset >= list.size() || limit <= 0) return Collections.emptyList();
+		return list.subList(offset, Math.min(list.size(), offset + limit));
+	}
+
+	private static <T> List<T> emptyIfNull(List<T> list)
+	{
+		return list != null ? list : Collections.<T> emptyList();
+	}
+}
@@ -0,0 +1,181 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Entity;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+/**
+ * Collects the entities created while parsing a catalog and writes them to the database in batches instead of one
+ * entity at a time. Entities are written in dependency order (ontology terms, features, categories, protocols) so
+ * that references always point to entities that were written before. After each batch the persistence context is
+ * flushed and cleared to keep its size independent of the catalog size.
+ *
+ * Categories count towards the batch size like all other entities, each categorical feature has its own copy of the
+ * categories of its value set. The categories of all features in a batch are written together in one bulk insert.
+ *
+ * Written entities are only referred to by their id. A writer can therefore release the subprotocols and features of
+ * written protocols, so that written catalog parts are not kept reachable from the protocols that are written after
+ * them. This is only allowed if written protocols are not updated afterwards.
+ */
+public class CatalogWriter implements CatalogEntityCollector
+{
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final DataService dataService;
+	private final int batchSize;
+	private final boolean releaseWrittenProtocols;
+
+	private final List<OntologyTerm> ontologyTerms;
+	private final Set<OntologyTerm> bufferedOntologyTerms;
+	private final List<ObservableFeature> features;
+	private final List<Category> categories;
+	private final List<Protocol> protocols;
+
+	private int nrBufferedEntities;
+	private int nrWrittenEntities;
+
+	public CatalogWriter(DataService dataService)
+	{
+		this(dataService, DEFAULT_BATCH_SIZE);
+	}
+
+	public CatalogWriter(DataService dataService, int batchSize)
+	{
+		this(dataService, batchSize, false);
+	}
+
+	/**
+	 * @param dataService
+	 * @param batchSize
+	 *            number of entities written to the database at once
+	 * @param releaseWrittenProtocols
+	 *            whether to release the subprotocols and features of written protocols
+	 */
+	public CatalogWriter(DataService dataService, int batchSize, boolean releaseWrittenProtocols)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be larger than 0");
+		this.dataService = dataService;
+		this.batchSize = batchSize;
+		this.releaseWrittenProtocols = releaseWrittenProtocols;
+		this.ontologyTerms = new ArrayList<OntologyTerm>(batchSize);
+		this.bufferedOntologyTerms = Collections.newSetFromMap(new IdentityHashMap<OntologyTerm, Boolean>());
+		this.features = new ArrayList<ObservableFeature>(batchSize);
+		this.categories = new ArrayList<Category>(batchSize);
+		this.protocols = new ArrayList<Protocol>(batchSize);
+	}
+
+	@Override
+	public void add(OntologyTerm ontologyTerm)
+	{
+		if (bufferedOntologyTerms.add(ontologyTerm))
+		{
+			ontologyTerms.add(ontologyTerm);
+			onAdd();
+		}
+	}
+
+	/**
+	 * Add a feature, a new unit ontology term of this feature is added as well
+	 *
+	 * @param feature
+	 */
+	@Override
+	public void add(ObservableFeature feature)
+	{
+		// unit ontology terms are shared between features, see UnitOntologyTermRegistry
+		OntologyTerm unit = feature.getUnit();
+		if (unit != null && unit.getId() == null && bufferedOntologyTerms.add(unit))
+		{
+			ontologyTerms.add(unit);
+			++nrBufferedEntities;
+		}
+
+		features.add(feature);
+		onAdd();
+	}
+
+	@Override
+	public void add(Category category)
+	{
+		categories.add(category);
+		onAdd();
+	}
+
+	@Override
+	public void add(Protocol protocol)
+	{
+		protocols.add(protocol);
+		onAdd();
+	}
+
+	/**
+	 * Write all buffered entities to the database
+	 */
+	public void flush()
+	{
+		if (nrBufferedEntities == 0) return;
+
+		write(OntologyTerm.ENTITY_NAME, ontologyTerms);
+		write(ObservableFeature.ENTITY_NAME, features);
+		write(Category.ENTITY_NAME, categories);
+		write(Protocol.ENTITY_NAME, protocols);
+
+		// all repositories share one persistence context, flushing and clearing one of them suffices
+		CrudRepository protocolRepository = dataService.getCrudRepository(Protocol.ENTITY_NAME);
+		protocolRepository.flush();
+		protocolRepository.clearCache();
+
+		if (releaseWrittenProtocols)
+		{
+			// the written protocols are detached, parent protocols only need their id
+			for (Protocol protocol : protocols)
+			{
+				protocol.setSubprotocols(null);
+				protocol.setFeatures(null);
+			}
+		}
+
+		ontologyTerms.clear();
+		bufferedOntologyTerms.clear();
+		features.clear();
+		categories.clear();
+		protocols.clear();
+
+		nrWrittenEntities += nrBufferedEntities;
+		nrBufferedEntities = 0;
+	}
+
+	/**
+	 * Returns the number of entities written to the database
+	 *
+	 * @return
+	 */
+	public int getNrWrittenEntities()
+	{
+		return nrWrittenEntities;
+	}
+
+	private void onAdd()
+	{
+		if (++nrBufferedEntities >= batchSize) flush();
+	}
+
+	private void write(String entityName, List<? extends Entity> entities)
+	{
+		if (!entities.isEmpty())
+		{
+			dataService.add(entityName, entities);
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package org.molgenis.lifelines.catalog;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import nl.umcg.hl7.service.catalog.CatalogService;
 import nl.umcg.hl7.service.catalog.GenericLayerCatalogService;
@@ -50,10 +55,9 @@ import org.molgenis.omx.catalogmanager.OmxCatalog;
 import org.molgenis.omx.observ.Category;
 import org.molgenis.omx.observ.ObservableFeature;
 import org.molgenis.omx.observ.Protocol;
-import org.molgenis.omx.observ.target.OntologyTerm;
 import org.molgenis.omx.search.DataSetsIndexer;
 import org.molgenis.omx.study.StudyDataRequest;
-import org.molgenis.omx.utils.ProtocolUtils;
+import org.molgenis.search.SearchService;
 import org.molgenis.study.UnknownStudyDefinitionException;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -65,22 +69,94 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 {
 	private static final Logger logger = Logger.getLogger(GenericLayerCatalogManagerService.class);
 
+	/** index document type of a protocol tree, followed by the root protocol id (see DataSetsIndexer) */
+	private static final String PROTOCOL_TREE_DOCUMENT_TYPE_PREFIX = "protocolTree-";
+	/** maximum number of measurement organizers converted or waiting to be written per conversion thread */
+	private static final int MEASUREMENT_ORGANIZER_TASKS_PER_THREAD = 2;
+
 	private final DataService dataService;
 	private final GenericLayerCatalogService genericLayerCatalogService;
-	private final DataSetsIndexer dataSetsIndexer;
+	private final CatalogIndexer catalogIndexer;
+	private final int batchSize;
+	private final CatalogStreamReader catalogStreamReader;
+	private final ForkJoinPool forkJoinPool;
+	private final SearchService searchService;
+	private final CatalogReleaseCache catalogReleaseCache;
+	private final OrganizerCatalogCache organizerCatalogCache;
 
 	public GenericLayerCatalogManagerService(DataService dataService,
 			GenericLayerCatalogService genericLayerCatalogService, DataSetsIndexer dataSetsIndexer)
+	{
+		this(dataService, genericLayerCatalogService, new CatalogIndexer(dataSetsIndexer),
+				CatalogWriter.DEFAULT_BATCH_SIZE, null, 1, null, 0, null);
+	}
+
+	/**
+	 * @param catalogIndexer
+	 *            indexer that indexes loaded catalogs after the load transaction committed
+	 * @param batchSize
+	 *            number of catalog entities written to the database at once while loading a catalog
+	 * @param catalogStreamReader
+	 *            reader used to stream catalogs while loading, null to retrieve catalogs as a whole
+	 * @param parallelism
+	 *            number of threads that convert measurements while loading a catalog, 1 to convert on the calling
+	 *            thread
+	 * @param searchService
+	 *            service used to delete the index documents of unloaded catalogs, null to keep index documents
+	 * @param catalogReleasesTimeToLive
+	 *            milliseconds that retrieved catalog releases are cached, 0 to retrieve catalog releases on each
+	 *            request
+	 * @param organizerCatalogCache
+	 *            cache for retrieved catalogs of catalog releases that are not loaded, null to retrieve these catalogs
+	 *            on each request
+	 */
+	public GenericLayerCatalogManagerService(DataService dataService,
+			GenericLayerCatalogService genericLayerCatalogService, CatalogIndexer catalogIndexer, int batchSize,
+			CatalogStreamReader catalogStreamReader, int parallelism, SearchService searchService,
+			long catalogReleasesTimeToLive, OrganizerCatalogCache organizerCatalogCache)
 	{
 		if (dataService == null) throw new IllegalArgumentException("dataService is null");
 		if (genericLayerCatalogService == null) throw new IllegalArgumentException("genericLayerCatalogService is null");
+		if (catalogIndexer == null) throw new IllegalArgumentException("catalogIndexer is null");
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be larger than 0");
+		if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be larger than 0");
+		if (catalogReleasesTimeToLive < 0) throw new IllegalArgumentException("catalogReleasesTimeToLive is negative");
 		this.dataService = dataService;
 		this.genericLayerCatalogService = genericLayerCatalogService;
-		this.dataSetsIndexer = dataSetsIndexer;
+		this.catalogIndexer = catalogIndexer;
+		this.batchSize = batchSize;
+		this.catalogStreamReader = catalogStreamReader;
+		this.forkJoinPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		this.searchService = searchService;
+		this.catalogReleaseCache = catalogReleasesTimeToLive > 0 ? new CatalogReleaseCache(
+				new Callable<Iterable<CatalogMeta>>()
+				{
+					@Override
+					public Iterable<CatalogMeta> call()
+					{
+						return retrieveCatalogReleases();
+					}
+				}, catalogReleasesTimeToLive) : null;
+		this.organizerCatalogCache = organizerCatalogCache;
+	}
+
+	/**
+	 * Stops the threads that convert measurements and refresh the cached catalog releases
+	 */
+	public void shutdown()
+	{
+		if (forkJoinPool != null) forkJoinPool.shutdown();
+		if (catalogReleaseCache != null) catalogReleaseCache.shutdown();
 	}
 
 	@Override
 	public Iterable<CatalogMeta> getCatalogs()
+	{
+		if (catalogReleaseCache != null) return catalogReleaseCache.getCatalogReleases();
+		return retrieveCatalogReleases();
+	}
+
+	private Iterable<CatalogMeta> retrieveCatalogReleases()
 	{
 		try
 		{
@@ -95,19 +171,37 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 	}
 
 	@Override
-	public Catalog getCatalog(String id) throws UnknownCatalogException
+	public Catalog getCatalog(final String id) throws UnknownCatalogException
 	{
 		CatalogMeta catalogMeta = null;
-		for (CatalogMeta aCatalogMeta : getCatalogs())
+		if (catalogReleaseCache != null)
+		{
+			catalogMeta = catalogReleaseCache.getCatalogRelease(id);
+		}
+		else
 		{
-			if (aCatalogMeta.getId().equals(id))
+			for (CatalogMeta aCatalogMeta : getCatalogs())
 			{
-				catalogMeta = aCatalogMeta;
-				break;
+				if (aCatalogMeta.getId().equals(id))
+				{
+					catalogMeta = aCatalogMeta;
+					break;
+				}
 			}
 		}
 		if (catalogMeta == null) throw new UnknownCatalogException("Unknown catalog id [" + id + "]");
 
+		if (organizerCatalogCache != null)
+		{
+			return organizerCatalogCache.getCatalog(id, catalogMeta, new Callable<REPCMT000100UV01Organizer>()
+			{
+				@Override
+				public REPCMT000100UV01Organizer call()
+				{
+					return retrieveCatalog(id, null, true);
+				}
+			});
+		}
 		REPCMT000100UV01Organizer catalog = retrieveCatalog(id, null, true);
 		return new OrganizerCatalog(catalog, catalogMeta);
 	}
@@ -130,21 +224,137 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 	@Override
 	public void loadCatalog(String id)
 	{
-		loadCatalog(id, null);
+		loadCatalog(id, new CatalogLoadJob(id, false));
+	}
+
+	/**
+	 * Loads a catalog and reports the load progress to the given job
+	 *
+	 * @param id
+	 * @param catalogLoadJob
+	 */
+	@Transactional
+	public void loadCatalog(String id, CatalogLoadJob catalogLoadJob)
+	{
+		loadCatalog(id, null, catalogLoadJob);
 	}
 
 	@Transactional
 	@Override
 	public void loadCatalogOfStudyDefinition(String id) throws UnknownCatalogException
 	{
-		loadCatalog(null, id);
+		loadCatalogOfStudyDefinition(id, new CatalogLoadJob(id, true));
+	}
+
+	/**
+	 * Loads the catalog of a study definition and reports the load progress to the given job
+	 *
+	 * @param id
+	 * @param catalogLoadJob
+	 */
+	@Transactional
+	public void loadCatalogOfStudyDefinition(String id, CatalogLoadJob catalogLoadJob)
+	{
+		loadCatalog(null, id, catalogLoadJob);
+	}
+
+	private void loadCatalog(String catalogReleaseId, String studyDefinitionId, CatalogLoadJob catalogLoadJob)
+	{
+		// written protocols are not updated afterwards, their written subtrees can be released
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, batchSize, true);
+		Protocol rootProtocol = convertCatalog(catalogReleaseId, studyDefinitionId, catalogWriter, catalogLoadJob);
+
+		catalogLoadJob.setPhase(CatalogLoadJob.Phase.PERSIST);
+		catalogWriter.flush();
+		catalogLoadJob.setNrWrittenEntities(catalogWriter.getNrWrittenEntities());
+		logger.info("wrote " + catalogWriter.getNrWrittenEntities() + " entities for catalog ["
+				+ rootProtocol.getIdentifier() + "]");
+
+		catalogIndexer.index(rootProtocol.getId(), catalogLoadJob);
+	}
+
+	/**
+	 * Loads a catalog release by comparing the catalog in the Generic Layer with the loaded catalog of this release and
+	 * reports the load progress to the given job. Only new protocols, features and categories are inserted, changed
+	 * protocols and features are updated, protocols that no longer exist are deactivated and features that no longer
+	 * exist are deleted. Loads the catalog if this release is not loaded.
+	 *
+	 * If a previous release is given and this release is not loaded, the loaded catalog of the previous release is
+	 * compared instead and becomes the catalog of this release, the previous release is no longer loaded afterwards.
+	 *
+	 * Runs in the transaction of the caller, see {@link CatalogLoadJobService}.
+	 *
+	 * @param id
+	 *            catalog release id
+	 * @param previousId
+	 *            catalog release id of a loaded previous release of the catalog or null
+	 * @param catalogLoadJob
+	 * @throws UnknownCatalogException
+	 *             if the previous release is not loaded
+	 */
+	public void reloadCatalog(String id, String previousId, CatalogLoadJob catalogLoadJob)
+			throws UnknownCatalogException
+	{
+		String loadedId = id;
+		Protocol loadedRootProtocol = findCatalogRootProtocol(id);
+		if (loadedRootProtocol == null && previousId != null)
+		{
+			loadedId = previousId;
+			loadedRootProtocol = findCatalogRootProtocol(previousId);
+			if (loadedRootProtocol == null) throw new UnknownCatalogException("Catalog [" + previousId
+					+ "] is not loaded");
+		}
+		if (loadedRootProtocol == null)
+		{
+			loadCatalog(id, null, catalogLoadJob);
+			return;
+		}
+
+		CatalogEntityList catalogEntities = new CatalogEntityList();
+		Protocol rootProtocol = convertCatalog(id, null, catalogEntities, catalogLoadJob);
+
+		catalogLoadJob.setPhase(CatalogLoadJob.Phase.PERSIST);
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, batchSize);
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, catalogWriter);
+		catalogMerger.merge(loadedRootProtocol, loadedId, rootProtocol, id, catalogEntities);
+		catalogLoadJob.setNrWrittenEntities(catalogMerger.getNrInserts() + catalogMerger.getNrUpdates()
+				+ catalogMerger.getNrDeletions());
+		logger.info("reloaded catalog [" + loadedId + "] as catalog [" + id + "]: " + catalogMerger.getNrInserts()
+				+ " inserts, " + catalogMerger.getNrUpdates() + " updates, " + catalogMerger.getNrDeactivations()
+				+ " deactivations, " + catalogMerger.getNrDeletions() + " deletions");
+
+		catalogIndexer.index(loadedRootProtocol.getId(), catalogLoadJob);
+
+		// the retrieved catalogs of both releases changed from loaded to not loaded or vice versa
+		if (organizerCatalogCache != null)
+		{
+			organizerCatalogCache.invalidate(id);
+			if (!loadedId.equals(id)) organizerCatalogCache.invalidate(loadedId);
+		}
+	}
+
+	/**
+	 * Returns the root protocol of a loaded catalog release
+	 *
+	 * @return root protocol or null if the catalog release is not loaded
+	 */
+	private Protocol findCatalogRootProtocol(String id)
+	{
+		return dataService.findOne(Protocol.ENTITY_NAME,
+				new QueryImpl().eq(Protocol.IDENTIFIER, getCatalogIdentifier(id, null)), Protocol.class);
 	}
 
-	private void loadCatalog(String catalogReleaseId, String studyDefinitionId)
+	/**
+	 * Converts a catalog to protocols, features and categories
+	 *
+	 * @return catalog root protocol, the last protocol added to the collector
+	 */
+	private Protocol convertCatalog(String catalogReleaseId, String studyDefinitionId,
+			CatalogEntityCollector catalogEntityCollector, CatalogLoadJob catalogLoadJob)
 	{
+		catalogLoadJob.setPhase(CatalogLoadJob.Phase.DOWNLOAD);
 		boolean useOntology = true;
 		Map<String, List<Code>> valueSetsIndex = createValueSetsIndex(catalogReleaseId, studyDefinitionId);
-		REPCMT000100UV01Organizer catalog = retrieveCatalog(catalogReleaseId, studyDefinitionId, useOntology);
 
 		// create catalog root protocol
 		Protocol rootProtocol = new Protocol();
@@ -153,61 +363,56 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 		rootProtocol.setRoot(true);
 		rootProtocol.setActive(true);
 
-		List<Protocol> subprotocols = new ArrayList<Protocol>();
+		UnitOntologyTermRegistry unitOntologyTermRegistry = new UnitOntologyTermRegistry(dataService);
+		CatalogLoadHandler catalogLoadHandler = new CatalogLoadHandler(rootProtocol, useOntology, valueSetsIndex,
+				unitOntologyTermRegistry, catalogReleaseId, catalogEntityCollector, catalogLoadJob);
+		if (catalogStreamReader != null)
+		{
+			catalogStreamReader.readCatalog(catalogReleaseId, useOntology, catalogLoadHandler);
+		}
+		else
+		{
+			REPCMT000100UV01Organizer catalog = retrieveCatalog(catalogReleaseId, studyDefinitionId, useOntology);
+			walkCatalog(catalog, catalogLoadHandler);
+		}
+		catalogLoadHandler.endCatalog();
+
+		catalogEntityCollector.add(rootProtocol);
+		return rootProtocol;
+	}
+
+	/**
+	 * Reports the organizers of a retrieved catalog to the handler in the same way as {@link CatalogStreamReader}
+	 */
+	private void walkCatalog(REPCMT000100UV01Organizer catalog, CatalogOrganizerHandler handler)
+	{
+		List<CatalogOrganizerHeader> path = new ArrayList<CatalogOrganizerHeader>();
 		for (REPCMT000100UV01Component3 component : catalog.getComponent())
 		{
-			REPCMT000100UV01Organizer organizer = component.getOrganizer().getValue();
-			String code = organizer.getCode().getCode();
+			if (component.getOrganizer() != null) walkOrganizer(component.getOrganizer().getValue(), path, handler);
+		}
+	}
 
-			if (code.equals("Generic"))
-			{
-				Protocol genericProtocol = new Protocol();
-				genericProtocol.setIdentifier(UUID.randomUUID().toString());
-				genericProtocol.setName(code);
-				genericProtocol.setActive(isAvailable(organizer));
+	private void walkOrganizer(REPCMT000100UV01Organizer organizer, List<CatalogOrganizerHeader> path,
+			CatalogOrganizerHandler handler)
+	{
+		if (handler.isSubtree(path))
+		{
+			handler.organizer(path, organizer);
+			return;
+		}
 
-				List<Protocol> genericSubprotocols = new ArrayList<Protocol>();
-				if (organizer.getComponent() != null)
-				{
-					for (REPCMT000100UV01Component3 genericComponent : organizer.getComponent())
-					{
-						Protocol protocol = parseGenericCatalogOrganizer(genericComponent.getOrganizer().getValue(),
-								useOntology, valueSetsIndex);
-						genericSubprotocols.add(protocol);
-					}
-				}
-				if (!genericSubprotocols.isEmpty()) genericProtocol.setSubprotocols(genericSubprotocols);
-				subprotocols.add(genericProtocol);
-				dataService.add(Protocol.ENTITY_NAME, genericProtocol);
-			}
-			else
+		path.add(new CatalogOrganizerHeader(organizer.getCode(), isAvailable(organizer)));
+		handler.startOrganizer(path);
+		if (organizer.getComponent() != null)
+		{
+			for (REPCMT000100UV01Component3 component : organizer.getComponent())
 			{
-				if (catalog.getComponent().size() != 1)
-				{
-					throw new RuntimeException("Expected exactly one catalog component for code != Generic");
-				}
-				rootProtocol.setName(code);
-
-				List<Protocol> dataSourceSubprotocols = new ArrayList<Protocol>();
-				if (organizer.getComponent() != null)
-				{
-					for (REPCMT000100UV01Component3 dataSourceComponent : organizer.getComponent())
-					{
-						Protocol protocol = parseDataSourceCatalogOrganizer(dataSourceComponent.getOrganizer()
-								.getValue(), useOntology, valueSetsIndex, catalogReleaseId);
-						dataSourceSubprotocols.add(protocol);
-					}
-				}
-				if (!dataSourceSubprotocols.isEmpty()) rootProtocol.setSubprotocols(dataSourceSubprotocols);
+				if (component.getOrganizer() != null) walkOrganizer(component.getOrganizer().getValue(), path, handler);
 			}
 		}
-		if (!subprotocols.isEmpty()) rootProtocol.setSubprotocols(subprotocols);
-
-		dataService.add(Protocol.ENTITY_NAME, rootProtocol);
-
-		dataService.getCrudRepository(Protocol.ENTITY_NAME).flush();
-		dataService.getCrudRepository(Protocol.ENTITY_NAME).clearCache();
-		dataSetsIndexer.indexProtocolsSynced(Collections.<Object> singletonList(rootProtocol.getId()));
+		handler.endOrganizer(path);
+		path.remove(path.size() - 1);
 	}
 
 	private Map<String, List<Code>> createValueSetsIndex(String catalogReleaseId, String studyDefinitionId)
@@ -222,90 +427,83 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 		return valueSetMap;
 	}
 
-	private Protocol parseDataSourceCatalogOrganizer(REPCMT000100UV01Organizer cohortOrganizer, boolean useOntology,
-			Map<String, List<Code>> valueSetsIndex, String catalogReleaseId)
+	private Protocol createCohortProtocol(CatalogOrganizerHeader cohortHeader, List<Protocol> cohortSubprotocols,
+			CatalogEntityCollector catalogEntityCollector)
 	{
-		Protocol cohortProtocol;
-		if (useOntology)
-		{
-			CD cohortOrganizerCode = cohortOrganizer.getCode();
-
-			cohortProtocol = new Protocol();
-			cohortProtocol.setIdentifier(UUID.randomUUID().toString());
-			cohortProtocol.setName(cohortOrganizer.getCode().getDisplayName());
-			cohortProtocol.setActive(isAvailable(cohortOrganizer));
+		Protocol cohortProtocol = new Protocol();
+		cohortProtocol.setIdentifier(UUID.randomUUID().toString());
+		cohortProtocol.setName(cohortHeader.getCode().getDisplayName());
+		cohortProtocol.setActive(cohortHeader.isAvailable());
+		if (!cohortSubprotocols.isEmpty()) cohortProtocol.setSubprotocols(cohortSubprotocols);
 
-			String cohortId = cohortOrganizerCode.getCode();
-
-			// measurement components
-			List<Protocol> cohortSubprotocols = new ArrayList<Protocol>();
-			for (REPCMT000100UV01Component3 measurementComponent : cohortOrganizer.getComponent())
-			{
-				if (measurementComponent.getOrganizer() == null) break; // FIXME remove
-				REPCMT000100UV01Organizer measurementOrganizer = measurementComponent.getOrganizer().getValue();
+		catalogEntityCollector.add(cohortProtocol);
+		return cohortProtocol;
+	}
 
-				CD measurementCode = measurementOrganizer.getCode();
-				String measurementCodeCode = measurementCode.getCode();
-				if (measurementCodeCode == null || measurementCodeCode.isEmpty())
-				{
-					throw new RuntimeException("Expected code for measurement [" + measurementCode.getDisplayName()
-							+ "]");
-				}
+	private Protocol parseMeasurementOrganizer(CD cohortOrganizerCode, REPCMT000100UV01Organizer measurementOrganizer,
+			boolean useOntology, Map<String, List<Code>> valueSetsIndex,
+			UnitOntologyTermRegistry unitOntologyTermRegistry, String catalogReleaseId,
+			CatalogEntityCollector catalogEntityCollector)
+	{
+		if (!useOntology)
+		{
+			throw new UnsupportedOperationException("load data source catalog for useOntology=false not implemented");
+		}
+		String cohortId = cohortOrganizerCode.getCode();
 
-				String measurementCodeCodeSystem = measurementCode.getCodeSystem();
-				if (measurementCodeCodeSystem == null || measurementCodeCodeSystem.isEmpty())
-				{
-					throw new RuntimeException("Expected code system for measurement ["
-							+ measurementCode.getDisplayName() + "]");
-				}
+		CD measurementCode = measurementOrganizer.getCode();
+		String measurementCodeCode = measurementCode.getCode();
+		if (measurementCodeCode == null || measurementCodeCode.isEmpty())
+		{
+			throw new RuntimeException("Expected code for measurement [" + measurementCode.getDisplayName() + "]");
+		}
 
-				String cohortCodeCode = cohortOrganizerCode.getCode();
-				if (cohortCodeCode == null || cohortCodeCode.isEmpty())
-				{
-					throw new RuntimeException("Expected code for cohort [" + cohortOrganizerCode.getDisplayName()
-							+ "]");
-				}
+		String measurementCodeCodeSystem = measurementCode.getCodeSystem();
+		if (measurementCodeCodeSystem == null || measurementCodeCodeSystem.isEmpty())
+		{
+			throw new RuntimeException("Expected code system for measurement [" + measurementCode.getDisplayName()
+					+ "]");
+		}
 
-				String cohortCodeCodeSystem = cohortOrganizerCode.getCodeSystem();
-				if (cohortCodeCodeSystem == null || cohortCodeCodeSystem.isEmpty())
-				{
-					throw new RuntimeException("Expected code system for cohort ["
-							+ cohortOrganizerCode.getDisplayName() + "]");
-				}
+		String cohortCodeCode = cohortOrganizerCode.getCode();
+		if (cohortCodeCode == null || cohortCodeCode.isEmpty())
+		{
+			throw new RuntimeException("Expected code for cohort [" + cohortOrganizerCode.getDisplayName() + "]");
+		}
 
-				String omxProtocolIdentifier = MeasurementIdConverter.toOmxProtocolIdentifier(catalogReleaseId,
-						cohortCodeCode, cohortCodeCodeSystem, measurementCodeCode, measurementCodeCodeSystem);
-				Protocol measurementProtocol = new Protocol();
-				measurementProtocol.setIdentifier(omxProtocolIdentifier);
-				measurementProtocol.setName(measurementCode.getDisplayName());
-				String measurementId = measurementCode.getCode();
+		String cohortCodeCodeSystem = cohortOrganizerCode.getCodeSystem();
+		if (cohortCodeCodeSystem == null || cohortCodeCodeSystem.isEmpty())
+		{
+			throw new RuntimeException("Expected code system for cohort [" + cohortOrganizerCode.getDisplayName()
+					+ "]");
+		}
 
-				List<Protocol> measurementSubprotocols = new ArrayList<Protocol>();
-				for (REPCMT000100UV01Component3 component : measurementOrganizer.getComponent())
-				{
-					REPCMT000100UV01Organizer componentOrganizer = component.getOrganizer().getValue();
-					Protocol measurementSubprotocol = parseDataSourceCatalogOrganizerRec(componentOrganizer,
-							useOntology, valueSetsIndex, cohortId, measurementId, catalogReleaseId);
-					measurementSubprotocols.add(measurementSubprotocol);
-				}
-				if (!measurementSubprotocols.isEmpty()) measurementProtocol.setSubprotocols(measurementSubprotocols);
+		String omxProtocolIdentifier = MeasurementIdConverter.toOmxProtocolIdentifier(catalogReleaseId,
+				cohortCodeCode, cohortCodeCodeSystem, measurementCodeCode, measurementCodeCodeSystem);
+		Protocol measurementProtocol = new Protocol();
+		measurementProtocol.setIdentifier(omxProtocolIdentifier);
+		measurementProtocol.setName(measurementCode.getDisplayName());
+		String measurementId = measurementCode.getCode();
 
-				cohortSubprotocols.add(measurementProtocol);
-				dataService.add(Protocol.ENTITY_NAME, measurementProtocol);
-			}
-			if (!cohortSubprotocols.isEmpty()) cohortProtocol.setSubprotocols(cohortSubprotocols);
-		}
-		else
+		List<Protocol> measurementSubprotocols = new ArrayList<Protocol>();
+		for (REPCMT000100UV01Component3 component : measurementOrganizer.getComponent())
 		{
-			throw new UnsupportedOperationException("load generic catalog for useOntology=false not implemented");
+			REPCMT000100UV01Organizer componentOrganizer = component.getOrganizer().getValue();
+			Protocol measurementSubprotocol = parseDataSourceCatalogOrganizerRec(componentOrganizer, useOntology,
+					valueSetsIndex, unitOntologyTermRegistry, cohortId, measurementId, catalogReleaseId,
+					catalogEntityCollector);
+			measurementSubprotocols.add(measurementSubprotocol);
 		}
+		if (!measurementSubprotocols.isEmpty()) measurementProtocol.setSubprotocols(measurementSubprotocols);
 
-		dataService.add(Protocol.ENTITY_NAME, cohortProtocol);
-		return cohortProtocol;
+		catalogEntityCollector.add(measurementProtocol);
+		return measurementProtocol;
 	}
 
 	private Protocol parseDataSourceCatalogOrganizerRec(REPCMT000100UV01Organizer organizer, boolean useOntology,
-			Map<String, List<Code>> valueSetsIndex, String cohortId, String measurementId, String catalogReleaseId)
+			Map<String, List<Code>> valueSetsIndex, UnitOntologyTermRegistry unitOntologyTermRegistry,
+			String cohortId, String measurementId, String catalogReleaseId,
+			CatalogEntityCollector catalogEntityCollector)
 	{
 		Protocol protocol;
 		if (useOntology)
@@ -332,7 +530,8 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 				{
 					REPCMT000100UV01Organizer componentOrganizer = component.getOrganizer().getValue();
 					Protocol subProtocol = parseDataSourceCatalogOrganizerRec(componentOrganizer, useOntology,
-							valueSetsIndex, cohortId, measurementId, catalogReleaseId);
+							valueSetsIndex, unitOntologyTermRegistry, cohortId, measurementId, catalogReleaseId,
+							catalogEntityCollector);
 					subprotocols.add(subProtocol);
 				}
 				// create feature
@@ -340,7 +539,8 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 				{
 					REPCMT000100UV01Observation componentObservation = component.getObservation().getValue();
 					ObservableFeature feature = parseDataSourceCatalogObservation(componentObservation, valueSetsIndex,
-							cohortId, measurementId, catalogReleaseId);
+							unitOntologyTermRegistry, cohortId, measurementId, catalogReleaseId,
+							catalogEntityCollector);
 					features.add(feature);
 				}
 			}
@@ -369,12 +569,14 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 			throw new UnsupportedOperationException("load data source catalog for useOntology=false not implemented");
 		}
 
-		dataService.add(Protocol.ENTITY_NAME, protocol);
+		catalogEntityCollector.add(protocol);
 		return protocol;
 	}
 
 	private ObservableFeature parseDataSourceCatalogObservation(REPCMT000100UV01Observation observation,
-			Map<String, List<Code>> valueSetsIndex, String cohortId, String measurementId, String catalogReleaseId)
+			Map<String, List<Code>> valueSetsIndex, UnitOntologyTermRegistry unitOntologyTermRegistry,
+			String cohortId, String measurementId, String catalogReleaseId,
+			CatalogEntityCollector catalogEntityCollector)
 	{
 		Gson gson = new Gson();
 		CD code = observation.getCode();
@@ -417,15 +619,11 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 
 		if (value instanceof PQ)
 		{
-			OntologyTerm unitOntologyTerm = new OntologyTerm();
-			unitOntologyTerm.setIdentifier(UUID.randomUUID().toString());
-			unitOntologyTerm.setName(((PQ) value).getUnit());
-			dataService.add(OntologyTerm.ENTITY_NAME, unitOntologyTerm);
-
-			observableFeature.setUnit(unitOntologyTerm);
+			String unit = ((PQ) value).getUnit();
+			if (unit != null) observableFeature.setUnit(unitOntologyTermRegistry.getUnitOntologyTerm(unit));
 		}
 
-		dataService.add(ObservableFeature.ENTITY_NAME, observableFeature);
+		catalogEntityCollector.add(observableFeature);
 
 		if (value instanceof CD || value instanceof CO)
 		{
@@ -439,7 +637,7 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 				category.setName(valueCode.getDisplayName());
 				category.setValueCode(valueCode.getCode());
 				category.setObservableFeature(observableFeature);
-				dataService.add(Category.ENTITY_NAME, category);
+				catalogEntityCollector.add(category);
 			}
 		}
 
@@ -447,7 +645,7 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 	}
 
 	private Protocol parseGenericCatalogOrganizer(REPCMT000100UV01Organizer organizer, boolean useOntology,
-			Map<String, List<Code>> valueSetsIndex)
+			Map<String, List<Code>> valueSetsIndex, CatalogEntityCollector catalogEntityCollector)
 	{
 		Protocol protocol;
 		if (useOntology)
@@ -464,14 +662,16 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 				if (component.getOrganizer() != null)
 				{
 					REPCMT000100UV01Organizer componentOrganizer = component.getOrganizer().getValue();
-					Protocol subProtocol = parseGenericCatalogOrganizer(componentOrganizer, useOntology, valueSetsIndex);
+					Protocol subProtocol = parseGenericCatalogOrganizer(componentOrganizer, useOntology,
+							valueSetsIndex, catalogEntityCollector);
 					subprotocols.add(subProtocol);
 				}
 				// create feature
 				else if (component.getObservation() != null)
 				{
 					REPCMT000100UV01Observation componentObservation = component.getObservation().getValue();
-					ObservableFeature feature = parseGenericCatalogObservation(componentObservation, valueSetsIndex);
+					ObservableFeature feature = parseGenericCatalogObservation(componentObservation,
+							valueSetsIndex, catalogEntityCollector);
 					features.add(feature);
 				}
 			}
@@ -500,12 +700,12 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 			throw new UnsupportedOperationException("load generic catalog for useOntology=false not implemented");
 		}
 
-		dataService.add(Protocol.ENTITY_NAME, protocol);
+		catalogEntityCollector.add(protocol);
 		return protocol;
 	}
 
 	private ObservableFeature parseGenericCatalogObservation(REPCMT000100UV01Observation observation,
-			Map<String, List<Code>> valueSetsIndex)
+			Map<String, List<Code>> valueSetsIndex, CatalogEntityCollector catalogEntityCollector)
 	{
 		CD code = observation.getCode();
 
@@ -513,7 +713,7 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 		observableFeature.setIdentifier(UUID.randomUUID().toString());
 		observableFeature.setName(code.getDisplayName());
 
-		dataService.add(ObservableFeature.ENTITY_NAME, observableFeature);
+		catalogEntityCollector.add(observableFeature);
 		return observableFeature;
 	}
 
@@ -552,7 +752,6 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 		deleteCatalog(protocolIdentifier);
 	}
 
-	// FIXME does not delete full catalog
 	private void deleteCatalog(String protocolIdentifier) throws UnknownCatalogException
 	{
 		Protocol protocol = dataService.findOne(Protocol.ENTITY_NAME,
@@ -561,10 +760,17 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 		{
 			throw new UnknownCatalogException("unknown catalog identifier [" + protocolIdentifier + "]");
 		}
-		List<Protocol> protocols = ProtocolUtils.getProtocolDescendants(protocol);
+		Integer protocolId = protocol.getId();
+
+		CatalogDeleter catalogDeleter = new CatalogDeleter(dataService, batchSize);
+		catalogDeleter.delete(protocol);
+		logger.info("deleted " + catalogDeleter.getNrDeletedEntities() + " entities for catalog [" + protocolIdentifier
+				+ "]");
 
-		dataService.delete(Protocol.ENTITY_NAME, protocol);
-		dataService.delete(Protocol.ENTITY_NAME, protocols);
+		if (searchService != null)
+		{
+			searchService.deleteDocumentsByType(PROTOCOL_TREE_DOCUMENT_TYPE_PREFIX + protocolId);
+		}
 	}
 
 	@Transactional
@@ -689,4 +895,199 @@ public class GenericLayerCatalogManagerService implements CatalogManagerService
 	{
 		return (organizer.getEffectiveTime() == null);
 	}
+
+	/**
+	 * Converts the organizers of a catalog to protocols. Top level organizers, cohort organizers and the Generic
+	 * organizer are handled by their header, measurement organizers and Generic subgroups as complete subtrees.
+	 */
+	private class CatalogLoadHandler implements CatalogOrganizerHandler
+	{
+		private static final String CODE_GENERIC = "Generic";
+
+		private final Protocol rootProtocol;
+		private final boolean useOntology;
+		private final Map<String, List<Code>> valueSetsIndex;
+		private final UnitOntologyTermRegistry unitOntologyTermRegistry;
+		private final String catalogReleaseId;
+		private final CatalogEntityCollector catalogEntityCollector;
+		private final CatalogLoadJob catalogLoadJob;
+
+		private final List<Protocol> rootSubprotocols;
+		private final Deque<List<Protocol>> subprotocolsStack;
+		private final Deque<MeasurementOrganizerTask> measurementOrganizerTasks;
+		private final int maxMeasurementOrganizerTasks;
+		private int nrCatalogComponents;
+		private boolean hasDataSourceComponent;
+
+		public CatalogLoadHandler(Protocol rootProtocol, boolean useOntology, Map<String, List<Code>> valueSetsIndex,
+				UnitOntologyTermRegistry unitOntologyTermRegistry, String catalogReleaseId,
+				CatalogEntityCollector catalogEntityCollector, CatalogLoadJob catalogLoadJob)
+		{
+			this.rootProtocol = rootProtocol;
+			this.useOntology = useOntology;
+			this.valueSetsIndex = valueSetsIndex;
+			this.unitOntologyTermRegistry = unitOntologyTermRegistry;
+			this.catalogReleaseId = catalogReleaseId;
+			this.catalogEntityCollector = catalogEntityCollector;
+			this.catalogLoadJob = catalogLoadJob;
+			this.rootSubprotocols = new ArrayList<Protocol>();
+			this.subprotocolsStack = new ArrayDeque<List<Protocol>>();
+			this.measurementOrganizerTasks = new ArrayDeque<MeasurementOrganizerTask>();
+			this.maxMeasurementOrganizerTasks = forkJoinPool != null ? MEASUREMENT_ORGANIZER_TASKS_PER_THREAD
+					* forkJoinPool.getParallelism() : 0;
+		}
+
+		@Override
+		public boolean isSubtree(List<CatalogOrganizerHeader> path)
+		{
+			if (path.isEmpty()) return false;
+			return isGeneric(path.get(0)) ? path.size() == 1 : path.size() == 2;
+		}
+
+		@Override
+		public void startOrganizer(List<CatalogOrganizerHeader> path)
+		{
+			if (path.size() == 1)
+			{
+				// the catalog is parsed while it is downloaded when streaming
+				catalogLoadJob.setPhase(CatalogLoadJob.Phase.PARSE);
+				++nrCatalogComponents;
+				CatalogOrganizerHeader header = path.get(0);
+				if (!isGeneric(header))
+				{
+					hasDataSourceComponent = true;
+					rootProtocol.setName(header.getCode().getCode());
+				}
+			}
+			subprotocolsStack.push(new ArrayList<Protocol>());
+		}
+
+		@Override
+		public void organizer(List<CatalogOrganizerHeader> path, REPCMT000100UV01Organizer organizer)
+		{
+			catalogLoadJob.incrementNrOrganizers();
+			if (isGeneric(path.get(0)))
+			{
+				subprotocolsStack.peek().add(
+						parseGenericCatalogOrganizer(organizer, useOntology, valueSetsIndex, catalogEntityCollector));
+			}
+			else if (forkJoinPool != null)
+			{
+				// measurement subtrees are independent, convert them in parallel and write them in document order.
+				// the number of pending tasks is bounded so that reading does not run ahead of writing.
+				if (measurementOrganizerTasks.size() >= maxMeasurementOrganizerTasks)
+				{
+					subprotocolsStack.peek().add(write(measurementOrganizerTasks.poll()));
+				}
+				MeasurementOrganizerTask task = new MeasurementOrganizerTask(path.get(1).getCode(), organizer,
+						useOntology, valueSetsIndex, unitOntologyTermRegistry, catalogReleaseId);
+				forkJoinPool.execute(task);
+				measurementOrganizerTasks.add(task);
+			}
+			else
+			{
+				subprotocolsStack.peek().add(
+						parseMeasurementOrganizer(path.get(1).getCode(), organizer, useOntology, valueSetsIndex,
+								unitOntologyTermRegistry, catalogReleaseId, catalogEntityCollector));
+			}
+		}
+
+		@Override
+		public void endOrganizer(List<CatalogOrganizerHeader> path)
+		{
+			List<Protocol> subprotocols = subprotocolsStack.pop();
+			while (!measurementOrganizerTasks.isEmpty())
+				subprotocols.add(write(measurementOrganizerTasks.poll()));
+
+			CatalogOrganizerHeader header = path.get(path.size() - 1);
+			if (path.size() == 1)
+			{
+				if (isGeneric(header))
+				{
+					Protocol genericProtocol = new Protocol();
+					genericProtocol.setIdentifier(UUID.randomUUID().toString());
+					genericProtocol.setName(header.getCode().getCode());
+					genericProtocol.setActive(header.isAvailable());
+					if (!subprotocols.isEmpty()) genericProtocol.setSubprotocols(subprotocols);
+					catalogEntityCollector.add(genericProtocol);
+					rootSubprotocols.add(genericProtocol);
+				}
+				else
+				{
+					rootSubprotocols.addAll(subprotocols);
+				}
+			}
+			else
+			{
+				subprotocolsStack.peek().add(createCohortProtocol(header, subprotocols, catalogEntityCollector));
+			}
+		}
+
+		public void endCatalog()
+		{
+			if (hasDataSourceComponent && nrCatalogComponents != 1)
+			{
+				throw new RuntimeException("Expected exactly one catalog component for code != Generic");
+			}
+			if (!rootSubprotocols.isEmpty()) rootProtocol.setSubprotocols(rootSubprotocols);
+		}
+
+		private boolean isGeneric(CatalogOrganizerHeader header)
+		{
+			return CODE_GENERIC.equals(header.getCode().getCode());
+		}
+
+		/**
+		 * Waits for a measurement organizer to be converted and adds its entities to the collector
+		 *
+		 * @return measurement protocol
+		 */
+		private Protocol write(MeasurementOrganizerTask task)
+		{
+			Protocol measurementProtocol = task.join();
+			task.getCatalogEntities().writeTo(catalogEntityCollector);
+			return measurementProtocol;
+		}
+	}
+
+	/**
+	 * Converts a measurement organizer subtree without writing to the database
+	 */
+	private class MeasurementOrganizerTask extends RecursiveTask<Protocol>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final CD cohortOrganizerCode;
+		private final REPCMT000100UV01Organizer measurementOrganizer;
+		private final boolean useOntology;
+		private final Map<String, List<Code>> valueSetsIndex;
+		private final UnitOntologyTermRegistry unitOntologyTermRegistry;
+		private final String catalogReleaseId;
+		private final CatalogEntityList catalogEntities;
+
+		public MeasurementOrganizerTask(CD cohortOrganizerCode, REPCMT000100UV01Organizer measurementOrganizer,
+				boolean useOntology, Map<String, List<Code>> valueSetsIndex,
+				UnitOntologyTermRegistry unitOntologyTermRegistry, String catalogReleaseId)
+		{
+			this.cohortOrganizerCode = cohortOrganizerCode;
+			this.measurementOrganizer = measurementOrganizer;
+			this.useOntology = useOntology;
+			this.valueSetsIndex = valueSetsIndex;
+			this.unitOntologyTermRegistry = unitOntologyTermRegistry;
+			this.catalogReleaseId = catalogReleaseId;
+			this.catalogEntities = new CatalogEntityList();
+		}
+
+		@Override
+		protected Protocol compute()
+		{
+			return parseMeasurementOrganizer(cohortOrganizerCode, measurementOrganizer, useOntology, valueSetsIndex,
+					unitOntologyTermRegistry, catalogReleaseId, catalogEntities);
+		}
+
+		public CatalogEntityList getCatalogEntities()
+		{
+			return catalogEntities;
+		}
+	}
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.molgenis.catalogmanager.CatalogManagerService;
 import org.molgenis.data.DataService;
 import org.molgenis.data.support.QueryImpl;
 import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.study.StudyDataRequest;
 import org.molgenis.study.UnknownStudyDefinitionException;
 
 public class LifeLinesCatalogManagerService implements CatalogManagerService
@@ -28,12 +29,38 @@ public class LifeLinesCatalogManagerService implements CatalogManagerService
 		this.dataService = dataService;
 	}
 
+	public void shutdown()
+	{
+		genericLayerCatalogManagerService.shutdown();
+	}
+
 	@Override
 	public void loadCatalog(String id) throws UnknownCatalogException
 	{
 		genericLayerCatalogManagerService.loadCatalog(id);
 	}
 
+	public void loadCatalog(String id, CatalogLoadJob catalogLoadJob) throws UnknownCatalogException
+	{
+		genericLayerCatalogManagerService.loadCatalog(id, catalogLoadJob);
+	}
+
+	/**
+	 * Loads the changes of a catalog release into the loaded catalog of this release or, if given and this release is
+	 * not loaded, into the loaded catalog of a previous release and reports the load progress to the given job
+	 *
+	 * @param id
+	 * @param previousId
+	 *            catalog release id of a loaded previous release or null
+	 * @param catalogLoadJob
+	 * @throws UnknownCatalogException
+	 */
+	public void reloadCatalog(String id, String previousId, CatalogLoadJob catalogLoadJob)
+			throws UnknownCatalogException
+	{
+		genericLayerCatalogManagerService.reloadCatalog(id, previousId, catalogLoadJob);
+	}
+
 	@Override
 	public void unloadCatalog(String id) throws UnknownCatalogException
 	{
@@ -58,6 +85,29 @@ public class LifeLinesCatalogManagerService implements CatalogManagerService
 		omxCatalogManagerService.loadCatalogOfStudyDefinition(id);
 	}
 
+	/**
+	 * Loads the catalog of a study definition and reports the load progress to the given job. The catalog of a study
+	 * definition is loaded in one step, the number of written protocols and features is reported once it is loaded.
+	 *
+	 * @param id
+	 * @param catalogLoadJob
+	 * @throws UnknownCatalogException
+	 * @throws UnknownStudyDefinitionException
+	 */
+	public void loadCatalogOfStudyDefinition(String id, CatalogLoadJob catalogLoadJob)
+			throws UnknownCatalogException, UnknownStudyDefinitionException
+	{
+		catalogLoadJob.setPhase(CatalogLoadJob.Phase.PERSIST);
+		omxCatalogManagerService.loadCatalogOfStudyDefinition(id);
+
+		StudyDataRequest studyDataRequest = dataService.findOne(StudyDataRequest.ENTITY_NAME,
+				new QueryImpl().eq(StudyDataRequest.ID, Integer.valueOf(id)), StudyDataRequest.class);
+		if (studyDataRequest != null && studyDataRequest.getProtocol() != null)
+		{
+			catalogLoadJob.setNrWrittenEntities(countEntities(studyDataRequest.getProtocol()));
+		}
+	}
+
 	@Override
 	public void unloadCatalogOfStudyDefinition(String id) throws UnknownCatalogException,
 			UnknownStudyDefinitionException
@@ -115,4 +165,19 @@ public class LifeLinesCatalogManagerService implements CatalogManagerService
 	{
 		return omxCatalogManagerService.isCatalogOfStudyDefinitionLoaded(id);
 	}
+
+	/**
+	 * Returns the number of protocols and features of a protocol tree
+	 */
+	private static int countEntities(Protocol protocol)
+	{
+		int nrEntities = 1;
+		if (protocol.getFeatures() != null) nrEntities += protocol.getFeatures().size();
+		if (protocol.getSubprotocols() != null)
+		{
+			for (Protocol subprotocol : protocol.getSubprotocols())
+				nrEntities += countEntities(subprotocol);
+		}
+		return nrEntities;
+	}
 }
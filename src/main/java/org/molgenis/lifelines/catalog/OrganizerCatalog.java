@@ -1,7 +1,12 @@
 package org.molgenis.lifelines.catalog;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hl7.v3.REPCMT000100UV01Component3;
 import org.hl7.v3.REPCMT000100UV01Organizer;
@@ -10,19 +15,49 @@ import org.molgenis.catalog.CatalogFolder;
 import org.molgenis.catalog.CatalogItem;
 import org.molgenis.catalog.CatalogMeta;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Lists;
-
+/**
+ * Catalog of an organizer. The folder tree of the catalog is created once and indexed on folder and item id.
+ */
 public class OrganizerCatalog implements Catalog
 {
 	private final REPCMT000100UV01Organizer organizer;
 	private final CatalogMeta catalogMeta;
+	private final List<CatalogFolder> children;
+	private final List<CatalogItem> items;
+	private final Map<String, CatalogFolder> folderIndex;
+	private final Map<String, CatalogItem> itemIndex;
 
 	public OrganizerCatalog(REPCMT000100UV01Organizer organizer, CatalogMeta catalogMeta)
 	{
 		if (organizer == null) throw new IllegalArgumentException("Organizer is null");
 		this.organizer = organizer;
 		this.catalogMeta = catalogMeta;
+
+		List<CatalogFolder> children = new ArrayList<CatalogFolder>();
+		List<CatalogItem> items = new ArrayList<CatalogItem>();
+		for (REPCMT000100UV01Component3 component : organizer.getComponent())
+		{
+			CatalogFolder child = new OrganizerCatalogFolder(component.getOrganizer().getValue(), null);
+			children.add(child);
+			items.addAll(child.getItems());
+		}
+		this.children = Collections.unmodifiableList(children);
+		this.items = Collections.unmodifiableList(items);
+
+		// index breadth first so that the folder or item closest to the root is found for ids that are not unique
+		this.folderIndex = new HashMap<String, CatalogFolder>();
+		this.itemIndex = new HashMap<String, CatalogItem>();
+		Deque<CatalogFolder> folders = new ArrayDeque<CatalogFolder>(children);
+		while (!folders.isEmpty())
+		{
+			CatalogFolder folder = folders.poll();
+			if (!folderIndex.containsKey(folder.getId())) folderIndex.put(folder.getId(), folder);
+			for (CatalogItem item : folder.getItems())
+			{
+				if (!itemIndex.containsKey(item.getId())) itemIndex.put(item.getId(), item);
+			}
+			folders.addAll(folder.getChildren());
+		}
 	}
 
 	@Override
@@ -46,22 +81,15 @@ public class OrganizerCatalog implements Catalog
 	@Override
 	public List<CatalogFolder> getChildren()
 	{
-		return Lists.transform(organizer.getComponent(), new Function<REPCMT000100UV01Component3, CatalogFolder>()
-		{
-			@Override
-			public CatalogFolder apply(REPCMT000100UV01Component3 component)
-			{
-				return new OrganizerCatalogFolder(component.getOrganizer().getValue());
-			}
-		});
+		return children;
 	}
 
+	/**
+	 * Returns the items of the top level folders
+	 */
 	@Override
 	public List<CatalogItem> getItems()
 	{
-		List<CatalogItem> items = new ArrayList<CatalogItem>();
-		for (CatalogFolder child : getChildren())
-			items.addAll(child.getItems());
 		return items;
 	}
 
@@ -83,14 +111,24 @@ public class OrganizerCatalog implements Catalog
 		return null;
 	}
 
+	/**
+	 * Returns the folder with the given id at any level of the catalog, null if the folder does not exist
+	 */
 	@Override
 	public CatalogFolder findItem(String catalogItemId)
 	{
-		for (CatalogFolder item : getChildren())
-		{
-			if (item.getId().equals(catalogItemId)) return item;
-		}
-		return null;
+		return folderIndex.get(catalogItemId);
+	}
+
+	/**
+	 * Returns the item with the given id at any level of the catalog, null if the item does not exist
+	 *
+	 * @param catalogItemId
+	 * @return
+	 */
+	public CatalogItem findCatalogItem(String catalogItemId)
+	{
+		return itemIndex.get(catalogItemId);
 	}
 
 	@Override
@@ -105,10 +143,13 @@ public class OrganizerCatalog implements Catalog
 		return organizer.getCode().getCodeSystem();
 	}
 
+	/**
+	 * Returns an empty path, the catalog is the root of its folders
+	 */
 	@Override
 	public Iterable<CatalogFolder> getPath()
 	{
-		throw new UnsupportedOperationException();
+		return Collections.emptyList();
 	}
 	
 	@Override
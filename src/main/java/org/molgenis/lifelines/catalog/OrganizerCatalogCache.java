@@ -0,0 +1,110 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.molgenis.catalog.CatalogMeta;
+
+/**
+ * Caches retrieved catalogs so that browsing a catalog that is not loaded does not retrieve the catalog from the
+ * Generic Layer on every request. The most recently used catalogs are kept in memory, retrieved catalogs are also
+ * stored in an optional {@link CatalogSnapshotStore} so that they survive restarts and memory cache evictions.
+ *
+ * The cache is safe for use by multiple threads.
+ */
+public class OrganizerCatalogCache
+{
+	public static final int DEFAULT_SIZE = 5;
+
+	private final CatalogSnapshotStore catalogSnapshotStore;
+	private final Map<String, OrganizerCatalog> catalogs;
+
+	/**
+	 * @param catalogSnapshotStore
+	 *            store for retrieved catalogs, null to keep retrieved catalogs in memory only
+	 * @param size
+	 *            maximum number of catalogs kept in memory
+	 */
+	public OrganizerCatalogCache(CatalogSnapshotStore catalogSnapshotStore, final int size)
+	{
+		if (size <= 0) throw new IllegalArgumentException("size must be larger than 0");
+		this.catalogSnapshotStore = catalogSnapshotStore;
+		this.catalogs = new LinkedHashMap<String, OrganizerCatalog>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, OrganizerCatalog> eldest)
+			{
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the catalog of the given catalog release, retrieves the catalog if it is not cached
+	 *
+	 * @param catalogReleaseId
+	 * @param catalogMeta
+	 * @param catalogRetriever
+	 *            retrieves the catalog from the Generic Layer
+	 * @return
+	 */
+	public OrganizerCatalog getCatalog(String catalogReleaseId, CatalogMeta catalogMeta,
+			Callable<REPCMT000100UV01Organizer> catalogRetriever)
+	{
+		synchronized (catalogs)
+		{
+			OrganizerCatalog catalog = catalogs.get(catalogReleaseId);
+			if (catalog != null) return catalog;
+		}
+
+		// retrieve outside of the lock, concurrent requests for the same catalog might both retrieve it
+		REPCMT000100UV01Organizer organizer = catalogSnapshotStore != null ? catalogSnapshotStore
+				.read(catalogReleaseId) : null;
+		if (organizer == null)
+		{
+			organizer = retrieve(catalogRetriever);
+			if (catalogSnapshotStore != null) catalogSnapshotStore.write(catalogReleaseId, organizer);
+		}
+		OrganizerCatalog catalog = new OrganizerCatalog(organizer, catalogMeta);
+
+		synchronized (catalogs)
+		{
+			catalogs.put(catalogReleaseId, catalog);
+		}
+		return catalog;
+	}
+
+	/**
+	 * Discards the cached catalog of the given catalog release
+	 *
+	 * @param catalogReleaseId
+	 */
+	public void invalidate(String catalogReleaseId)
+	{
+		synchronized (catalogs)
+		{
+			catalogs.remove(catalogReleaseId);
+		}
+		if (catalogSnapshotStore != null) catalogSnapshotStore.delete(catalogReleaseId);
+	}
+
+	private REPCMT000100UV01Organizer retrieve(Callable<REPCMT000100UV01Organizer> catalogRetriever)
+	{
+		try
+		{
+			return catalogRetriever.call();
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package org.molgenis.lifelines.catalog;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.hl7.v3.CD;
@@ -8,19 +10,52 @@ import org.hl7.v3.REPCMT000100UV01Organizer;
 import org.molgenis.catalog.CatalogFolder;
 import org.molgenis.catalog.CatalogItem;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-
+/**
+ * Catalog folder of an organizer. The child folders and items of a folder are created once, when the folder is
+ * created, and know their parent so that their path can be determined.
+ */
 public class OrganizerCatalogFolder implements CatalogFolder
 {
 	private final REPCMT000100UV01Organizer organizer;
+	private final List<CatalogFolder> path;
+	private final List<CatalogFolder> children;
+	private final List<CatalogItem> items;
 
 	public OrganizerCatalogFolder(REPCMT000100UV01Organizer organizer)
+	{
+		this(organizer, null);
+	}
+
+	/**
+	 * @param organizer
+	 * @param parent
+	 *            parent folder, null for a top level folder
+	 */
+	OrganizerCatalogFolder(REPCMT000100UV01Organizer organizer, OrganizerCatalogFolder parent)
 	{
 		if (organizer == null) throw new IllegalArgumentException("Organizer is null");
 		this.organizer = organizer;
+
+		List<CatalogFolder> path = new ArrayList<CatalogFolder>();
+		if (parent != null) path.addAll(parent.path);
+		path.add(this);
+		this.path = Collections.unmodifiableList(path);
+
+		List<CatalogFolder> children = new ArrayList<CatalogFolder>();
+		List<CatalogItem> items = new ArrayList<CatalogItem>();
+		for (REPCMT000100UV01Component3 component : organizer.getComponent())
+		{
+			if (component.getOrganizer() != null)
+			{
+				children.add(new OrganizerCatalogFolder(component.getOrganizer().getValue(), this));
+			}
+			if (component.getObservation() != null)
+			{
+				items.add(new RepcObservationCatalogItem(component.getObservation().getValue(), this));
+			}
+		}
+		this.children = Collections.unmodifiableList(children);
+		this.items = Collections.unmodifiableList(items);
 	}
 
 	@Override
@@ -48,33 +83,13 @@ public class OrganizerCatalogFolder implements CatalogFolder
 	@Override
 	public List<CatalogFolder> getChildren()
 	{
-		return Lists.newArrayList(Iterables.filter(
-				Iterables.transform(organizer.getComponent(), new Function<REPCMT000100UV01Component3, CatalogFolder>()
-				{
-
-					@Override
-					public CatalogFolder apply(REPCMT000100UV01Component3 component)
-					{
-						return component.getOrganizer() != null ? new OrganizerCatalogFolder(component.getOrganizer()
-								.getValue()) : null;
-					}
-				}), Predicates.notNull()));
+		return children;
 	}
 
 	@Override
 	public List<CatalogItem> getItems()
 	{
-		return Lists.newArrayList(Iterables.filter(
-				Iterables.transform(organizer.getComponent(), new Function<REPCMT000100UV01Component3, CatalogItem>()
-				{
-
-					@Override
-					public CatalogItem apply(REPCMT000100UV01Component3 component)
-					{
-						return component.getObservation() != null ? new RepcObservationCatalogItem(component
-								.getObservation().getValue()) : null;
-					}
-				}), Predicates.notNull()));
+		return items;
 	}
 
 	@Override
@@ -89,10 +104,13 @@ public class OrganizerCatalogFolder implements CatalogFolder
 		return organizer.getCode().getCodeSystem();
 	}
 
+	/**
+	 * Returns the folders from the top level folder up to and including this folder
+	 */
 	@Override
 	public Iterable<CatalogFolder> getPath()
 	{
-		throw new UnsupportedOperationException();
+		return path;
 	}
 	
 	@Override
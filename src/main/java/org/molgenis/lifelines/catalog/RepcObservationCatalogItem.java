@@ -1,5 +1,6 @@
 package org.molgenis.lifelines.catalog;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.hl7.v3.CD;
@@ -10,11 +11,23 @@ import org.molgenis.catalog.CatalogItem;
 public class RepcObservationCatalogItem implements CatalogItem
 {
 	private final REPCMT000100UV01Observation observation;
+	private final CatalogFolder folder;
 
 	public RepcObservationCatalogItem(REPCMT000100UV01Observation observation)
+	{
+		this(observation, null);
+	}
+
+	/**
+	 * @param observation
+	 * @param folder
+	 *            folder that contains this item, null if unknown
+	 */
+	public RepcObservationCatalogItem(REPCMT000100UV01Observation observation, CatalogFolder folder)
 	{
 		if (observation == null) throw new IllegalArgumentException("observation is null");
 		this.observation = observation;
+		this.folder = folder;
 	}
 
 	@Override
@@ -58,10 +71,14 @@ public class RepcObservationCatalogItem implements CatalogItem
 		return observation.getCode().getCodeSystem();
 	}
 
+	/**
+	 * Returns the path of the folder that contains this item, an empty path if the folder is unknown
+	 */
 	@Override
 	public Iterable<CatalogFolder> getPath()
 	{
-		throw new UnsupportedOperationException();
+		if (folder == null) return Collections.emptyList();
+		return folder.getPath();
 	}
 
 	@Override
@@ -0,0 +1,64 @@
+package org.molgenis.lifelines.catalog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.lifelines.utils.OmxIdentifierGenerator;
+import org.molgenis.omx.observ.target.OntologyTerm;
+
+/**
+ * Provides one unit ontology term per unit so that features with the same unit share an ontology term, within a
+ * catalog and across catalog releases. Unit ontology terms that exist in the database are reused, new unit ontology
+ * terms are not persisted by the registry but by the {@link CatalogWriter} that writes the features referring to them.
+ *
+ * The registry is safe for use by multiple threads.
+ */
+public class UnitOntologyTermRegistry
+{
+	/** Unified Code for Units of Measure code system used for HL7 physical quantity units */
+	static final String UCUM_CODE_SYSTEM = "2.16.840.1.113883.6.8";
+
+	private final ConcurrentMap<String, OntologyTerm> unitOntologyTerms;
+
+	public UnitOntologyTermRegistry(DataService dataService)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		this.unitOntologyTerms = new ConcurrentHashMap<String, OntologyTerm>();
+
+		String identifierPrefix = OmxIdentifierGenerator.from(OntologyTerm.class, UCUM_CODE_SYSTEM) + '.';
+		Iterable<OntologyTerm> ontologyTerms = dataService.findAll(OntologyTerm.ENTITY_NAME,
+				new QueryImpl().like(OntologyTerm.IDENTIFIER, identifierPrefix), OntologyTerm.class);
+		for (OntologyTerm ontologyTerm : ontologyTerms)
+		{
+			if (ontologyTerm.getIdentifier().startsWith(identifierPrefix))
+			{
+				unitOntologyTerms.put(ontologyTerm.getName(), ontologyTerm);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ontology term for the given unit, creates a new ontology term if the unit is unknown
+	 *
+	 * @param unit
+	 * @return
+	 */
+	public OntologyTerm getUnitOntologyTerm(String unit)
+	{
+		if (unit == null) throw new IllegalArgumentException("unit is null");
+
+		OntologyTerm unitOntologyTerm = unitOntologyTerms.get(unit);
+		if (unitOntologyTerm == null)
+		{
+			OntologyTerm newUnitOntologyTerm = new OntologyTerm();
+			newUnitOntologyTerm.setIdentifier(OmxIdentifierGenerator.from(OntologyTerm.class, UCUM_CODE_SYSTEM, unit));
+			newUnitOntologyTerm.setName(unit);
+
+			unitOntologyTerm = unitOntologyTerms.putIfAbsent(unit, newUnitOntologyTerm);
+			if (unitOntologyTerm == null) unitOntologyTerm = newUnitOntologyTerm;
+		}
+		return unitOntologyTerm;
+	}
+}
@@ -0,0 +1,95 @@
+package org.molgenis.lifelines.controller;
+
+import static org.molgenis.lifelines.controller.CatalogLoadJobController.URI;
+
+import java.util.List;
+
+import org.molgenis.framework.ui.MolgenisPluginController;
+import org.molgenis.lifelines.catalog.CatalogLoadJob;
+import org.molgenis.lifelines.catalog.CatalogLoadJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Controller that starts background catalog loads and reports their progress
+ */
+@Controller
+@RequestMapping(URI)
+public class CatalogLoadJobController extends MolgenisPluginController
+{
+	public static final String ID = "catalogloadjobs";
+	public static final String URI = MolgenisPluginController.PLUGIN_URI_PREFIX + ID;
+
+	private final CatalogLoadJobService catalogLoadJobService;
+
+	@Autowired
+	public CatalogLoadJobController(CatalogLoadJobService catalogLoadJobService)
+	{
+		super(URI);
+		if (catalogLoadJobService == null) throw new IllegalArgumentException("catalogLoadJobService is null");
+		this.catalogLoadJobService = catalogLoadJobService;
+	}
+
+	@RequestMapping(value = "/catalog/{id}", method = RequestMethod.POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	@ResponseBody
+	public CatalogLoadJob loadCatalog(@PathVariable("id") String id)
+	{
+		return catalogLoadJobService.loadCatalog(id);
+	}
+
+	/**
+	 * Loads the changes of a catalog release into the loaded catalog of this release. A loaded previous release is
+	 * only used if requested explicitly, it is no longer loaded afterwards.
+	 */
+	@RequestMapping(value = "/catalog/{id}/reload", method = RequestMethod.POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	@ResponseBody
+	public CatalogLoadJob reloadCatalog(@PathVariable("id") String id,
+			@RequestParam(value = "previous", required = false) String previousId)
+	{
+		return catalogLoadJobService.reloadCatalog(id, previousId);
+	}
+
+	@RequestMapping(value = "/studydefinition/{id}", method = RequestMethod.POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	@ResponseBody
+	public CatalogLoadJob loadCatalogOfStudyDefinition(@PathVariable("id") String id)
+	{
+		return catalogLoadJobService.loadCatalogOfStudyDefinition(id);
+	}
+
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public List<CatalogLoadJob> getJobs()
+	{
+		return catalogLoadJobService.getJobs();
+	}
+
+	@RequestMapping(value = "/{jobId}", method = RequestMethod.GET)
+	@ResponseBody
+	public CatalogLoadJob getJob(@PathVariable("jobId") String jobId)
+	{
+		CatalogLoadJob catalogLoadJob = catalogLoadJobService.getJob(jobId);
+		if (catalogLoadJob == null) throw new UnknownCatalogLoadJobException(jobId);
+		return catalogLoadJob;
+	}
+
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	private static class UnknownCatalogLoadJobException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public UnknownCatalogLoadJobException(String jobId)
+		{
+			super("Unknown catalog load job [" + jobId + "]");
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.molgenis.lifelines.controller;
+
+import static org.molgenis.lifelines.controller.CatalogTreeController.URI;
+
+import org.molgenis.catalog.UnknownCatalogException;
+import org.molgenis.framework.ui.MolgenisPluginController;
+import org.molgenis.lifelines.catalog.CatalogNodePage;
+import org.molgenis.lifelines.catalog.CatalogTreeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Controller that returns catalog tree nodes one page at a time
+ */
+@Controller
+@RequestMapping(URI)
+public class CatalogTreeController extends MolgenisPluginController
+{
+	public static final String ID = "catalogtree";
+	public static final String URI = MolgenisPluginController.PLUGIN_URI_PREFIX + ID;
+
+	private static final int DEFAULT_LIMIT = 100;
+	private static final int MAX_LIMIT = 1000;
+
+	private final CatalogTreeService catalogTreeService;
+
+	@Autowired
+	public CatalogTreeController(CatalogTreeService catalogTreeService)
+	{
+		super(URI);
+		if (catalogTreeService == null) throw new IllegalArgumentException("catalogTreeService is null");
+		this.catalogTreeService = catalogTreeService;
+	}
+
+	@RequestMapping(value = "/{catalogId}/children", method = RequestMethod.GET)
+	@ResponseBody
+	public CatalogNodePage getChildren(@PathVariable("catalogId") String catalogId,
+			@RequestParam(value = "parentId", required = false) String parentId,
+			@RequestParam(value = "offset", required = false) Integer offset,
+			@RequestParam(value = "limit", required = false) Integer limit) throws UnknownCatalogException
+	{
+		int pageOffset = offset != null ? offset : 0;
+		int pageLimit = limit != null ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
+		return catalogTreeService.getChildren(catalogId, parentId, pageOffset, pageLimit);
+	}
+
+	@ExceptionHandler(UnknownCatalogException.class)
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	@ResponseBody
+	public String handleUnknownCatalogException(UnknownCatalogException e)
+	{
+		return e.getMessage();
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ResponseBody
+	public String handleIllegalArgumentException(IllegalArgumentException e)
+	{
+		return e.getMessage();
+	}
+}
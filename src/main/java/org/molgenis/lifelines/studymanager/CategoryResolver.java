@@ -0,0 +1,106 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.lifelines.utils.OmxIdentifierGenerator;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Resolves category codes to categories while importing study data. The categories of the features of a study are
+ * retrieved once when the resolver is created and are resolved on feature and value code, the catalog loader does not
+ * derive category identifiers from their code. Other categories are retrieved by identifier on first use and
+ * remembered, including categories that do not exist. Values with unknown categories are counted instead of reported
+ * one by one.
+ */
+class CategoryResolver
+{
+	private static final int QUERY_SIZE = 1000;
+
+	private final DataService dataService;
+	/** categories of the features of the study per feature id and value code */
+	private final Map<Integer, Map<String, Category>> featureCategories;
+	/** other categories per identifier */
+	private final Map<String, Category> categories;
+	private final Map<String, Integer> nrMissingValues;
+
+	public CategoryResolver(DataService dataService, Collection<ObservableFeature> features)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (features == null) throw new IllegalArgumentException("features is null");
+		this.dataService = dataService;
+		this.featureCategories = new HashMap<Integer, Map<String, Category>>();
+		this.categories = new HashMap<String, Category>();
+		this.nrMissingValues = new HashMap<String, Integer>();
+
+		List<Integer> featureIds = new ArrayList<Integer>(features.size());
+		for (ObservableFeature feature : features)
+			featureIds.add(feature.getId());
+		for (List<Integer> featureIdsPartition : Iterables.partition(featureIds, QUERY_SIZE))
+		{
+			for (Category category : dataService.findAll(Category.ENTITY_NAME,
+					new QueryImpl().in(Category.OBSERVABLEFEATURE, featureIdsPartition), Category.class))
+			{
+				Integer featureId = category.getObservableFeature().getId();
+				Map<String, Category> valueCodeCategories = featureCategories.get(featureId);
+				if (valueCodeCategories == null)
+				{
+					valueCodeCategories = new HashMap<String, Category>();
+					featureCategories.put(featureId, valueCodeCategories);
+				}
+				valueCodeCategories.put(category.getValueCode(), category);
+			}
+		}
+	}
+
+	/**
+	 * Returns the category of the given feature with the given code, null if the category does not exist
+	 *
+	 * @param feature
+	 * @param codeSystem
+	 * @param code
+	 * @return
+	 */
+	public Category getCategory(ObservableFeature feature, String codeSystem, String code)
+	{
+		Map<String, Category> valueCodeCategories = featureCategories.get(feature.getId());
+		if (valueCodeCategories != null)
+		{
+			Category category = valueCodeCategories.get(code);
+			if (category != null) return category;
+		}
+
+		String identifier = OmxIdentifierGenerator.from(Category.class, codeSystem, code);
+		Category category = categories.get(identifier);
+		if (category == null && !categories.containsKey(identifier))
+		{
+			category = dataService.findOne(Category.ENTITY_NAME, new QueryImpl().eq(Category.IDENTIFIER, identifier),
+					Category.class);
+			categories.put(identifier, category);
+		}
+		if (category == null)
+		{
+			Integer count = nrMissingValues.get(identifier);
+			nrMissingValues.put(identifier, count != null ? count + 1 : 1);
+		}
+		return category;
+	}
+
+	/**
+	 * Returns the number of values per missing category identifier
+	 *
+	 * @return
+	 */
+	public Map<String, Integer> getNrMissingValues()
+	{
+		return nrMissingValues;
+	}
+}
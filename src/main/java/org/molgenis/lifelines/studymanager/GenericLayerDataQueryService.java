@@ -4,48 +4,31 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.log4j.Logger;
-import org.hl7.v3.ANY;
-import org.hl7.v3.BL;
-import org.hl7.v3.CD;
-import org.hl7.v3.INT;
 import org.hl7.v3.POQMMT000001UVQualityMeasureDocument;
-import org.hl7.v3.PQ;
-import org.hl7.v3.REAL;
-import org.hl7.v3.REPCMT000100UV01Component3;
-import org.hl7.v3.REPCMT000100UV01Observation;
-import org.hl7.v3.REPCMT000100UV01Organizer;
-import org.hl7.v3.REPCMT000400UV01ActCategory;
-import org.hl7.v3.REPCMT000400UV01Component4;
-import org.hl7.v3.ST;
-import org.hl7.v3.TS;
 import org.molgenis.catalog.UnknownCatalogException;
 import org.molgenis.data.DataService;
 import org.molgenis.data.support.QueryImpl;
 import org.molgenis.lifelines.catalog.CatalogIdConverter;
-import org.molgenis.lifelines.utils.OmxIdentifierGenerator;
+import org.molgenis.lifelines.utils.GzipCompressingHttpEntity;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
 import org.molgenis.lifelines.utils.OutputStreamHttpEntity;
-import org.molgenis.omx.observ.Category;
 import org.molgenis.omx.observ.DataSet;
-import org.molgenis.omx.observ.ObservableFeature;
-import org.molgenis.omx.observ.ObservationSet;
-import org.molgenis.omx.observ.ObservedValue;
-import org.molgenis.omx.observ.value.BoolValue;
-import org.molgenis.omx.observ.value.CategoricalValue;
-import org.molgenis.omx.observ.value.LongValue;
-import org.molgenis.omx.observ.value.StringValue;
 import org.molgenis.study.UnknownStudyDefinitionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
@@ -53,134 +36,90 @@ public class GenericLayerDataQueryService
 {
 	private static final Logger logger = Logger.getLogger(GenericLayerDataQueryService.class);
 
-	private static final JAXBContext JAXB_CONTEXT_QUALITY_MEASURE_DOCUMENT;
-	private static final JAXBContext JAXB_CONTEXT_ACT_CATEGORY;
-
-	static
-	{
-		try
-		{
-			JAXB_CONTEXT_QUALITY_MEASURE_DOCUMENT = JAXBContext.newInstance(POQMMT000001UVQualityMeasureDocument.class);
-		}
-		catch (JAXBException e)
-		{
-			throw new RuntimeException(e);
-		}
-	}
-
-	static
-	{
-		try
-		{
-			JAXB_CONTEXT_ACT_CATEGORY = JAXBContext.newInstance(REPCMT000400UV01ActCategory.class);
-		}
-		catch (JAXBException e)
-		{
-			throw new RuntimeException(e);
-		}
-	}
-
 	@Autowired
 	private HttpClient httpClient;
+	@Autowired
+	private Hl7JaxbCodec hl7JaxbCodec;
 	@Value("${lifelines.data.query.service.url}")
 	private String dataQueryServiceUrl; // Specify in molgenis-server.properties
+	@Value("${lifelines.data.query.request.compression:false}")
+	private boolean requestCompression; // gzip the eMeasure request, the service must accept gzip encoded requests
+	@Value("${lifelines.data.query.response.compression:true}")
+	private boolean responseCompression; // accept gzip or deflate encoded study data responses
+	@Value("${lifelines.data.query.batch.size:1000}")
+	private int batchSize; // number of observation sets and observed values written per batch
+	@Value("${lifelines.data.query.chunk.size:0}")
+	private int chunkSize; // number of patients committed per transaction, 0 to load all patients in one transaction
+	@Value("${lifelines.data.query.parallelism:1}")
+	private int parallelism; // number of threads that convert patients, 1 to import on the calling thread
+	@Value("${lifelines.data.query.queue.size:100}")
+	private int queueSize; // maximum number of patients read but not yet written while converting in parallel
 	@Autowired
 	private DataService dataService;
-
-	@Transactional
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Loads the study data of a study definition from the Generic Layer. If a chunk size is configured the patients
+	 * are committed in chunks and the number of committed patients is recorded as checkpoint, loading the study data
+	 * again after a failure continues after the last committed patient. Otherwise all patients are loaded in the
+	 * transaction of the caller or in a new transaction if there is none.
+	 *
+	 * @param studyDefinition
+	 */
 	public void loadStudyDefinitionData(final POQMMT000001UVQualityMeasureDocument studyDefinition)
 	{
-		try
+		String id = studyDefinition.getId().getExtension();
+
+		// send eMeasure request to GL
+		HttpPost httpPost = new HttpPost(dataQueryServiceUrl + "/data");
+		httpPost.setHeader("Content-Type", "application/xml");
+		// the http client decompresses gzip and deflate encoded responses
+		httpPost.setHeader("Accept-Encoding", responseCompression ? "gzip,deflate" : "identity");
+		HttpEntity requestEntity = new OutputStreamHttpEntity()
 		{
-			// send eMeasure request to GL
-			HttpPost httpPost = new HttpPost(dataQueryServiceUrl + "/data");
-			httpPost.setHeader("Content-Type", "application/xml");
-			httpPost.setEntity(new OutputStreamHttpEntity()
+			@Override
+			public void writeTo(final OutputStream outstream) throws IOException
 			{
-				@Override
-				public void writeTo(final OutputStream outstream) throws IOException
+				try
 				{
-					try
-					{
-						JAXB_CONTEXT_QUALITY_MEASURE_DOCUMENT.createMarshaller().marshal(studyDefinition,
-								outstream);
-					}
-					catch (JAXBException e)
-					{
-						throw new RuntimeException(e);
-					}
-					outstream.close();
+					hl7JaxbCodec.getMarshaller().marshal(studyDefinition, outstream);
 				}
-			});
-
-			// parse study data response from GL
-			REPCMT000400UV01ActCategory actCategory;
-			InputStream xmlStream = null;
-			try
-			{
-				HttpResponse response = httpClient.execute(httpPost);
-				int statusCode = response.getStatusLine().getStatusCode();
-				if (statusCode < 200 || statusCode > 299) throw new IOException(
-						"Error persisting study definition (statuscode " + statusCode + ")");
-				xmlStream = response.getEntity().getContent();
-				actCategory = JAXB_CONTEXT_ACT_CATEGORY.createUnmarshaller()
-						.unmarshal(new StreamSource(xmlStream), REPCMT000400UV01ActCategory.class).getValue();
+				catch (JAXBException e)
+				{
+					throw new RuntimeException(e);
+				}
+				outstream.close();
 			}
-			catch (RuntimeException e)
+		};
+		httpPost.setEntity(requestCompression ? new GzipCompressingHttpEntity(requestEntity) : requestEntity);
+
+		StudyDataLoad studyDataLoad = new StudyDataLoad(id, dataService, transactionManager, batchSize, chunkSize);
+		InputStream xmlStream = null;
+		try
+		{
+			// stream study data response from GL, convert each patient to OMX and put in database
+			HttpResponse response = httpClient.execute(httpPost);
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode < 200 || statusCode > 299) throw new IOException(
+					"Error persisting study definition (statuscode " + statusCode + ")");
+			xmlStream = response.getEntity().getContent();
+			XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(xmlStream, "UTF-8");
+			StudyDataStreamReader studyDataStreamReader = new StudyDataStreamReader(hl7JaxbCodec);
+			int nrComponents;
+			if (parallelism > 1)
 			{
-				httpPost.abort();
-				throw e;
+				// overlap reading, converting and writing
+				nrComponents = new StudyDataPipeline(studyDataStreamReader, parallelism, queueSize).run(
+						xmlStreamReader, studyDataLoad, studyDataLoad);
 			}
-			finally
+			else
 			{
-				IOUtils.closeQuietly(xmlStream);
-			}
-
-			// convert REPCMT000400UV01ActCategory to OMX and put in database
-			String id = studyDefinition.getId().getExtension();
-			String omxId = CatalogIdConverter.catalogOfStudyDefinitionIdToOmxIdentifier(id);
-			DataSet dataSet = dataService.findOne(DataSet.ENTITY_NAME, new QueryImpl().eq(DataSet.IDENTIFIER, omxId),
-					DataSet.class);
-
-			for (REPCMT000400UV01Component4 rootComponent : actCategory.getComponent())
-			{
-				// create observation set
-				ObservationSet observationSet = new ObservationSet();
-				observationSet.setPartOfDataSet(dataSet);
-
-				REPCMT000100UV01Organizer organizer = rootComponent.getOrganizer().getValue();
-				// COCTMT050000UV01Patient patient = organizer.getRecordTarget().getValue().getPatient().getValue();
-				// JAXBElement<?> postalCodeSerializable = (JAXBElement<?>)
-				// patient.getAddr().get(0).getContent().get(0);
-				// if (postalCodeSerializable.getDeclaredType().equals(AdxpPostalCode.class))
-				// {
-				// AdxpPostalCode postalCode = (AdxpPostalCode) postalCodeSerializable;
-				// postalCodez
-				// }
-
-				// create other features and values
-				for (REPCMT000100UV01Component3 organizerComponent : organizer.getComponent())
-				{
-					REPCMT000100UV01Observation observation = organizerComponent.getObservation().getValue();
-					String featureId = observation.getId().get(0).getRoot();
-					ObservableFeature observableFeature = dataService.findOne(ObservableFeature.ENTITY_NAME,
-							new QueryImpl().eq(ObservableFeature.IDENTIFIER, featureId), ObservableFeature.class);
-					if (observableFeature == null) throw new RuntimeException(
-							"missing ObservableFeature with identifier " + featureId);
-
-					org.molgenis.omx.observ.value.Value value = toValue(observation.getValue());
-					if (value != null)
-					{
-						ObservedValue observedValue = new ObservedValue();
-						observedValue.setObservationSet(observationSet);
-						observedValue.setFeature(observableFeature);
-						observedValue.setValue(value);
-
-						dataService.add(ObservedValue.ENTITY_NAME, observedValue);
-					}
-				}
-				dataService.add(ObservationSet.ENTITY_NAME, observationSet);
+				nrComponents = studyDataStreamReader.readComponents(xmlStreamReader, studyDataLoad);
 			}
+			studyDataLoad.commit();
+			logger.info("imported study data of " + studyDataLoad.getNrWrittenComponents() + " of " + nrComponents
+					+ " patients for study definition [" + id + "]");
 		}
 		catch (IOException e)
 		{
@@ -192,11 +131,39 @@ public class GenericLayerDataQueryService
 			logger.error(e);
 			throw new RuntimeException(e);
 		}
+		catch (XMLStreamException e)
+		{
+			logger.error(e);
+			throw new RuntimeException(e);
+		}
 		catch (RuntimeException e)
 		{
 			logger.error(e);
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			IOUtils.closeQuietly(xmlStream);
+			if (!studyDataLoad.isCompleted())
+			{
+				httpPost.abort();
+				studyDataLoad.rollback();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a chunked study data load of the given study definition failed after committing one or more
+	 * chunks, loading the study data again continues after the last committed patient
+	 *
+	 * @param id
+	 *            study definition id
+	 * @return
+	 */
+	@Transactional(readOnly = true)
+	public boolean isStudyDataLoadResumable(String id)
+	{
+		return StudyDataLoad.isResumable(dataService, id);
 	}
 
 	public boolean isStudyDataLoaded(String id)
@@ -216,76 +183,4 @@ public class GenericLayerDataQueryService
 				+ "] does not exist");
 		return dataset.getProtocolUsed().getActive();
 	}
-
-	private org.molgenis.omx.observ.value.Value toValue(ANY anyValue)
-	{
-		if (anyValue instanceof INT)
-		{
-			// integer
-			INT value = (INT) anyValue;
-			// convert to long, not to int
-			LongValue longValue = new LongValue();
-			longValue.setValue(value.getValue().longValue());
-			return longValue;
-		}
-		else if (anyValue instanceof ST)
-		{
-			// string
-			ST value = (ST) anyValue;
-			StringValue stringValue = new StringValue();
-			stringValue.setValue(value.getRepresentation().value());
-			return stringValue;
-		}
-		else if (anyValue instanceof PQ)
-		{
-			// physical quantity
-			PQ value = (PQ) anyValue;
-			StringValue stringValue = new StringValue();
-			stringValue.setValue(value.getValue());
-			return stringValue;
-		}
-		else if (anyValue instanceof TS)
-		{
-			// time
-			TS value = (TS) anyValue;
-			StringValue stringValue = new StringValue();
-			stringValue.setValue(value.getValue());
-			return stringValue;
-		}
-		else if (anyValue instanceof REAL)
-		{
-			// fractional number
-			REAL value = (REAL) anyValue;
-			// conversion to double not always possible, see HL7 docs
-			StringValue stringValue = new StringValue();
-			stringValue.setValue(value.getValue());
-			return stringValue;
-		}
-		else if (anyValue instanceof BL)
-		{
-			// boolean
-			BL value = (BL) anyValue;
-			BoolValue boolValue = new BoolValue();
-			boolValue.setValue(value.isValue());
-			return boolValue;
-		}
-		else if (anyValue instanceof CD) // for CD and CO values
-		{
-			// categorical
-			CD value = (CD) anyValue;
-			String identifier = OmxIdentifierGenerator.from(Category.class, value.getCodeSystem(), value.getCode());
-			Category category = dataService.findOne(Category.ENTITY_NAME,
-					new QueryImpl().eq(Category.IDENTIFIER, identifier), Category.class);
-			if (category == null)
-			{
-				logger.error("missing category identifier: " + identifier);
-				return null;
-			}
-			CategoricalValue categoricalValue = new CategoricalValue();
-			categoricalValue.setValue(category);
-			return categoricalValue;
-		}
-
-		throw new UnsupportedOperationException("ANY instance not supported: " + anyValue.getClass());
-	}
-}
\ No newline at end of file
+}
@@ -1,8 +1,20 @@
 package org.molgenis.lifelines.studymanager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import nl.umcg.hl7.service.studydefinition.CreateResponse;
 import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionService;
@@ -38,31 +50,74 @@ import org.molgenis.study.StudyDefinition.Status;
 import org.molgenis.study.UnknownStudyDefinitionException;
 import org.molgenis.studymanager.StudyManagerService;
 
+import com.google.common.collect.Iterables;
+
 public class GenericLayerStudyManagerService implements StudyManagerService
 {
 	private static final Logger logger = Logger.getLogger(GenericLayerStudyManagerService.class);
 
+	public static final int DEFAULT_NR_STATUS_QUERY_THREADS = 4;
+	public static final long DEFAULT_STATUS_QUERY_TIMEOUT = 60000;
+	private static final int STATUS_QUERY_QUEUE_SIZE = 100;
+	private static final int QUERY_SIZE = 1000;
+
 	private final GenericLayerStudyDefinitionService studyDefinitionService;
 	private final CatalogManagerService catalogLoaderService;
 	private final GenericLayerDataQueryService dataQueryService;
 	private final MolgenisUserService userService;
 	final DataService dataService;
 	private final HL7StudyConverter hl7Converter;
+	private final ThreadPoolExecutor statusQueryExecutor;
+	private final long statusQueryTimeout;
+	private final QualityMeasureDocumentCache qualityMeasureDocumentCache;
 
 	public GenericLayerStudyManagerService(GenericLayerStudyDefinitionService studyDefinitionService,
 			CatalogManagerService catalogLoaderService, GenericLayerDataQueryService dataQueryService,
 			MolgenisUserService userService, DataService dataService)
+	{
+		this(studyDefinitionService, catalogLoaderService, dataQueryService, userService, dataService,
+				DEFAULT_NR_STATUS_QUERY_THREADS, DEFAULT_STATUS_QUERY_TIMEOUT, null);
+	}
+
+	/**
+	 * @param nrStatusQueryThreads
+	 *            number of threads that retrieve the study definitions of different statuses concurrently
+	 * @param statusQueryTimeout
+	 *            milliseconds to wait for the study definitions of all requested statuses
+	 * @param qualityMeasureDocumentCache
+	 *            cache for retrieved study definitions, null to retrieve study definitions on every read
+	 */
+	public GenericLayerStudyManagerService(GenericLayerStudyDefinitionService studyDefinitionService,
+			CatalogManagerService catalogLoaderService, GenericLayerDataQueryService dataQueryService,
+			MolgenisUserService userService, DataService dataService, int nrStatusQueryThreads,
+			long statusQueryTimeout, QualityMeasureDocumentCache qualityMeasureDocumentCache)
 	{
 		if (studyDefinitionService == null) throw new IllegalArgumentException("Study definition service is null");
 		if (catalogLoaderService == null) throw new IllegalArgumentException("Catalog manager service is null");
 		if (dataQueryService == null) throw new IllegalArgumentException("Data query service is null");
 		if (userService == null) throw new IllegalArgumentException("User service is null");
+		if (nrStatusQueryThreads <= 0) throw new IllegalArgumentException("nrStatusQueryThreads must be larger than 0");
+		if (statusQueryTimeout <= 0) throw new IllegalArgumentException("statusQueryTimeout must be larger than 0");
 		this.studyDefinitionService = studyDefinitionService;
 		this.catalogLoaderService = catalogLoaderService;
 		this.dataQueryService = dataQueryService;
 		this.userService = userService;
 		this.dataService = dataService;
 		this.hl7Converter = new HL7StudyConverter();
+		this.statusQueryExecutor = new ThreadPoolExecutor(nrStatusQueryThreads, nrStatusQueryThreads, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(STATUS_QUERY_QUEUE_SIZE), new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						// do not prevent the application from shutting down
+						Thread thread = new Thread(runnable, "study-definition-status-query");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.statusQueryTimeout = statusQueryTimeout;
+		this.qualityMeasureDocumentCache = qualityMeasureDocumentCache;
 	}
 
 	/**
@@ -128,50 +183,117 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 	@Override
 	public List<StudyDefinition> getStudyDefinitions(Status status)
 	{
-		ArrayOfXElement hl7Containers;
+		// Study manager service does not support state REJECTED
+		if (status == Status.REJECTED) return Collections.emptyList();
+		return toStudyDefinitionList(retrieveHL7Containers(status));
+	}
+
+	/**
+	 * Returns the study definitions for each of the given statuses. The study definitions of the different statuses
+	 * are retrieved concurrently, so the duration is that of the slowest retrieval instead of the sum of all
+	 * retrievals.
+	 *
+	 * @param statuses
+	 * @return study definitions by status, in the iteration order of the given statuses
+	 */
+	public Map<Status, List<StudyDefinition>> getStudyDefinitions(Collection<Status> statuses)
+	{
+		// approved and exported study definitions are retrieved with the same call
+		Map<Status, Future<ArrayOfXElement>> futures = new HashMap<Status, Future<ArrayOfXElement>>();
+		for (Status status : statuses)
+		{
+			final Status queryStatus = status == Status.EXPORTED ? Status.APPROVED : status;
+			if (queryStatus == Status.REJECTED || futures.containsKey(queryStatus)) continue;
+			futures.put(queryStatus, statusQueryExecutor.submit(new Callable<ArrayOfXElement>()
+			{
+				@Override
+				public ArrayOfXElement call()
+				{
+					return retrieveHL7Containers(queryStatus);
+				}
+			}));
+		}
+
+		long deadline = System.currentTimeMillis() + statusQueryTimeout;
+		try
+		{
+			// study definitions are converted on the calling thread, conversion accesses the database
+			Map<Status, List<StudyDefinition>> studyDefinitions = new LinkedHashMap<Status, List<StudyDefinition>>();
+			for (Status status : statuses)
+			{
+				Future<ArrayOfXElement> future = futures.get(status == Status.EXPORTED ? Status.APPROVED : status);
+				List<StudyDefinition> statusStudyDefinitions;
+				if (future != null)
+				{
+					long timeout = Math.max(0, deadline - System.currentTimeMillis());
+					statusStudyDefinitions = toStudyDefinitionList(future.get(timeout, TimeUnit.MILLISECONDS));
+				}
+				else statusStudyDefinitions = Collections.emptyList();
+				studyDefinitions.put(status, statusStudyDefinitions);
+			}
+			return studyDefinitions;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		catch (TimeoutException e)
+		{
+			logger.error("timeout retrieving study definitions with statuses " + statuses);
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			for (Future<ArrayOfXElement> future : futures.values())
+				future.cancel(true);
+		}
+	}
+
+	private ArrayOfXElement retrieveHL7Containers(Status status)
+	{
 		switch (status)
 		{
 			case APPROVED:
 			case EXPORTED:
 				try
 				{
-					hl7Containers = studyDefinitionService.getApproved(null).getHL7Containers();
+					return studyDefinitionService.getApproved(null).getHL7Containers();
 				}
 				catch (GenericLayerStudyDefinitionServiceGetApprovedFAULTFaultMessage e)
 				{
 					logger.error(e.getMessage());
 					throw new RuntimeException(e);
 				}
-				break;
 			case DRAFT:
 				try
 				{
-					hl7Containers = studyDefinitionService.getDraft(null).getHL7Containers();
+					return studyDefinitionService.getDraft(null).getHL7Containers();
 				}
 				catch (GenericLayerStudyDefinitionServiceGetDraftFAULTFaultMessage e)
 				{
 					logger.error(e.getMessage());
 					throw new RuntimeException(e);
 				}
-				break;
-			case REJECTED:
-				// Study manager service does not support state REJECTED
-				return Collections.emptyList();
 			case SUBMITTED:
 				try
 				{
-					hl7Containers = studyDefinitionService.getSubmitted(null).getHL7Containers();
+					return studyDefinitionService.getSubmitted(null).getHL7Containers();
 				}
 				catch (GenericLayerStudyDefinitionServiceGetSubmittedFAULTFaultMessage e)
 				{
 					logger.error(e.getMessage());
 					throw new RuntimeException(e);
 				}
-				break;
 			default:
 				throw new RuntimeException("Unknown status: " + status);
 		}
-		return toStudyDefinitionList(hl7Containers);
 	}
 
 	@Override
@@ -195,30 +317,39 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 
 	private List<StudyDefinition> toStudyDefinitionList(ArrayOfXElement elements)
 	{
-		List<StudyDefinition> studyDefinitions = new ArrayList<StudyDefinition>();
-		if (elements != null)
+		if (elements == null) return new ArrayList<StudyDefinition>();
+		List<HL7Container> hl7Containers = elements.getHL7Container();
+		if (hl7Containers == null) return new ArrayList<StudyDefinition>();
+
+		// retrieve the study data requests of all study definitions at once
+		List<String> omxIdentifiers = new ArrayList<String>(hl7Containers.size());
+		for (HL7Container hl7Container : hl7Containers)
 		{
-			List<HL7Container> hl7Containers = elements.getHL7Container();
-			if (hl7Containers != null)
-			{
-				for (HL7Container hl7Container : hl7Containers)
-				{
-					POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = hl7Container
-							.getQualityMeasureDocument();
+			omxIdentifiers.add(StudyDefinitionIdConverter.studyDefinitionIdToOmxIdentifier(hl7Container
+					.getQualityMeasureDocument().getId().getExtension()));
+		}
+		Map<String, StudyDataRequest> studyDataRequests = new HashMap<String, StudyDataRequest>();
+		for (List<String> omxIdentifiersPartition : Iterables.partition(omxIdentifiers, QUERY_SIZE))
+		{
+			Query q = new QueryImpl().in(StudyDataRequest.IDENTIFIER, omxIdentifiersPartition);
+			for (StudyDataRequest sdr : dataService.findAll(StudyDataRequest.ENTITY_NAME, q, StudyDataRequest.class))
+				studyDataRequests.put(sdr.getIdentifier(), sdr);
+		}
 
-					String omxIdentifier = StudyDefinitionIdConverter
-							.studyDefinitionIdToOmxIdentifier(qualityMeasureDocument.getId().getExtension());
-					Query q = new QueryImpl().eq(StudyDataRequest.IDENTIFIER, omxIdentifier);
-					StudyDataRequest sdr = dataService.findOne(StudyDataRequest.ENTITY_NAME, q, StudyDataRequest.class);
-					if (sdr == null)
-					{
-						throw new RuntimeException("Unknow studydatarequest with idenfifier [" + omxIdentifier + "]");
-					}
-					qualityMeasureDocument.getId().setExtension(sdr.getId().toString());
-					studyDefinitions
-							.add(new QualityMeasureDocumentStudyDefinition(qualityMeasureDocument, dataService));
-				}
+		List<StudyDefinition> studyDefinitions = new ArrayList<StudyDefinition>(hl7Containers.size());
+		for (int i = 0; i < hl7Containers.size(); ++i)
+		{
+			POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = hl7Containers.get(i)
+					.getQualityMeasureDocument();
+
+			String omxIdentifier = omxIdentifiers.get(i);
+			StudyDataRequest sdr = studyDataRequests.get(omxIdentifier);
+			if (sdr == null)
+			{
+				throw new RuntimeException("Unknow studydatarequest with idenfifier [" + omxIdentifier + "]");
 			}
+			qualityMeasureDocument.getId().setExtension(sdr.getId().toString());
+			studyDefinitions.add(new QualityMeasureDocumentStudyDefinition(qualityMeasureDocument, dataService));
 		}
 		return studyDefinitions;
 	}
@@ -235,13 +366,17 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 	@Override
 	public void loadStudyData(String id) throws UnknownStudyDefinitionException
 	{
-		try
+		// the catalog of an interrupted study data load was loaded before
+		if (!dataQueryService.isStudyDataLoadResumable(id))
 		{
-			catalogLoaderService.loadCatalogOfStudyDefinition(id);
-		}
-		catch (UnknownCatalogException e)
-		{
-			throw new UnknownStudyDefinitionException(e);
+			try
+			{
+				catalogLoaderService.loadCatalogOfStudyDefinition(id);
+			}
+			catch (UnknownCatalogException e)
+			{
+				throw new UnknownStudyDefinitionException(e);
+			}
 		}
 
 		POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = getStudyDefinitionAsQualityMeasureDocument(id);
@@ -318,6 +453,10 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error(e.getMessage());
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			invalidateQualityMeasureDocument(studyDefinition.getId());
+		}
 	}
 
 	@Override
@@ -333,10 +472,31 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error(e.getMessage());
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			invalidateQualityMeasureDocument(id);
+		}
 	}
 
-	private POQMMT000001UVQualityMeasureDocument getStudyDefinitionAsQualityMeasureDocument(String id)
+	private POQMMT000001UVQualityMeasureDocument getStudyDefinitionAsQualityMeasureDocument(final String id)
 			throws UnknownStudyDefinitionException
+	{
+		if (qualityMeasureDocumentCache != null)
+		{
+			return qualityMeasureDocumentCache.getQualityMeasureDocument(id,
+					new Callable<POQMMT000001UVQualityMeasureDocument>()
+					{
+						@Override
+						public POQMMT000001UVQualityMeasureDocument call()
+						{
+							return retrieveQualityMeasureDocument(id);
+						}
+					});
+		}
+		return retrieveQualityMeasureDocument(id);
+	}
+
+	private POQMMT000001UVQualityMeasureDocument retrieveQualityMeasureDocument(String id)
 	{
 		try
 		{
@@ -393,6 +553,10 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error(e.getMessage());
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			invalidateQualityMeasureDocument(externalId);
+		}
 	}
 
 	private String sendStudyDataRequestToGenericLayer(StudyDataRequest studyDataRequest)
@@ -467,6 +631,13 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error("", e);
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			if (qualityMeasureDocument.getId() != null)
+			{
+				invalidateQualityMeasureDocument(qualityMeasureDocument.getId().getExtension());
+			}
+		}
 
 		return qualityMeasureDocument;
 	}
@@ -482,6 +653,10 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error("", e);
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			invalidateQualityMeasureDocument(studyDefinitionId);
+		}
 	}
 
 	private void approveStudyDefinition(String studyDefinitionId)
@@ -495,5 +670,14 @@ public class GenericLayerStudyManagerService implements StudyManagerService
 			logger.error("", e);
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			invalidateQualityMeasureDocument(studyDefinitionId);
+		}
+	}
+
+	private void invalidateQualityMeasureDocument(String id)
+	{
+		if (qualityMeasureDocumentCache != null && id != null) qualityMeasureDocumentCache.invalidate(id);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+
+/**
+ * Resolves feature identifiers to features while importing study data. The features of the protocol tree of a study
+ * are retrieved once when the resolver is created, features that are not part of the protocol tree are retrieved on
+ * first use and remembered.
+ */
+class ObservableFeatureResolver
+{
+	private final DataService dataService;
+	private final Map<String, ObservableFeature> features;
+
+	/**
+	 * @param dataService
+	 * @param protocol
+	 *            root protocol of the study, null if the study has no protocol
+	 */
+	public ObservableFeatureResolver(DataService dataService, Protocol protocol)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		this.dataService = dataService;
+		this.features = new HashMap<String, ObservableFeature>();
+		if (protocol != null) addFeatures(protocol);
+	}
+
+	/**
+	 * Returns the feature with the given identifier
+	 *
+	 * @param identifier
+	 * @return
+	 * @throws RuntimeException
+	 *             if the feature does not exist
+	 */
+	public ObservableFeature getFeature(String identifier)
+	{
+		ObservableFeature feature = features.get(identifier);
+		if (feature == null)
+		{
+			feature = dataService.findOne(ObservableFeature.ENTITY_NAME,
+					new QueryImpl().eq(ObservableFeature.IDENTIFIER, identifier), ObservableFeature.class);
+			if (feature == null) throw new RuntimeException("missing ObservableFeature with identifier " + identifier);
+			features.put(identifier, feature);
+		}
+		return feature;
+	}
+
+	/**
+	 * Returns the features resolved so far, including all features of the protocol tree
+	 *
+	 * @return
+	 */
+	public Collection<ObservableFeature> getFeatures()
+	{
+		return features.values();
+	}
+
+	private void addFeatures(Protocol protocol)
+	{
+		List<ObservableFeature> protocolFeatures = protocol.getFeatures();
+		if (protocolFeatures != null)
+		{
+			for (ObservableFeature feature : protocolFeatures)
+				features.put(feature.getIdentifier(), feature);
+		}
+		List<Protocol> subprotocols = protocol.getSubprotocols();
+		if (subprotocols != null)
+		{
+			for (Protocol subprotocol : subprotocols)
+				addFeatures(subprotocol);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hl7.v3.CD;
+import org.molgenis.omx.observ.value.Value;
+
+/**
+ * Observations of one patient converted from HL7 to OMX values. Converting does not access the database, so patients
+ * can be converted on any thread. Features and categories are resolved when the observations are written.
+ */
+class PatientObservations
+{
+	private final List<Observation> observations;
+
+	public PatientObservations(int size)
+	{
+		this.observations = new ArrayList<Observation>(size);
+	}
+
+	/**
+	 * @param featureIdentifier
+	 * @param value
+	 *            non-categorical value
+	 */
+	public void add(String featureIdentifier, Value value)
+	{
+		observations.add(new Observation(featureIdentifier, value, null));
+	}
+
+	/**
+	 * @param featureIdentifier
+	 * @param code
+	 *            code of a categorical value
+	 */
+	public void add(String featureIdentifier, CD code)
+	{
+		observations.add(new Observation(featureIdentifier, null, code));
+	}
+
+	public List<Observation> getObservations()
+	{
+		return observations;
+	}
+
+	public static class Observation
+	{
+		private final String featureIdentifier;
+		private final Value value;
+		private final CD code;
+
+		private Observation(String featureIdentifier, Value value, CD code)
+		{
+			this.featureIdentifier = featureIdentifier;
+			this.value = value;
+			this.code = code;
+		}
+
+		public String getFeatureIdentifier()
+		{
+			return featureIdentifier;
+		}
+
+		/**
+		 * Returns the value of a non-categorical observation
+		 *
+		 * @return value or null for categorical observations
+		 */
+		public Value getValue()
+		{
+			return value;
+		}
+
+		/**
+		 * Returns the code of a categorical observation
+		 *
+		 * @return code or null for non-categorical observations
+		 */
+		public CD getCode()
+		{
+			return code;
+		}
+	}
+}
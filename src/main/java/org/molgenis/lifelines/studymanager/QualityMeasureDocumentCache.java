@@ -0,0 +1,177 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import org.hl7.v3.POQMMT000001UVQualityMeasureDocument;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+
+/**
+ * Caches retrieved study definitions so that the reads of one user action do not each retrieve the study definition
+ * from the Generic Layer. The most recently used study definitions are kept in memory.
+ *
+ * Every change of a study definition by this application must be followed by {@link #invalidate(String)}, a
+ * retrieval that overlaps with an invalidation is not cached so that it can not replace a newer version. Study
+ * definitions can also change in the Generic Layer itself, e.g. when their status changes, so cached study
+ * definitions are retrieved again once their time to live expired. Callers modify study definitions, the cache
+ * therefore stores study definitions marshalled and returns a new copy on every read. The cache is safe for use by
+ * multiple threads.
+ */
+public class QualityMeasureDocumentCache
+{
+	public static final int DEFAULT_SIZE = 100;
+	public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+	private static final QName QNAME_QUALITY_MEASURE_DOCUMENT = new QName("urn:hl7-org:v3", "QualityMeasureDocument");
+
+	private final Hl7JaxbCodec hl7JaxbCodec;
+	private final long timeToLive;
+	private final Map<String, CachedDocument> documents;
+	private long nrInvalidations;
+
+	public QualityMeasureDocumentCache(Hl7JaxbCodec hl7JaxbCodec, int size)
+	{
+		this(hl7JaxbCodec, size, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * @param hl7JaxbCodec
+	 * @param size
+	 *            maximum number of study definitions kept in memory
+	 * @param timeToLive
+	 *            milliseconds after which a cached study definition is retrieved again
+	 */
+	public QualityMeasureDocumentCache(Hl7JaxbCodec hl7JaxbCodec, final int size, long timeToLive)
+	{
+		if (hl7JaxbCodec == null) throw new IllegalArgumentException("hl7JaxbCodec is null");
+		if (size <= 0) throw new IllegalArgumentException("size must be larger than 0");
+		if (timeToLive <= 0) throw new IllegalArgumentException("timeToLive must be larger than 0");
+		this.hl7JaxbCodec = hl7JaxbCodec;
+		this.timeToLive = timeToLive;
+		this.documents = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDocument> eldest)
+			{
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Returns a copy of the study definition with the given Generic Layer id, retrieves the study definition if it is
+	 * not cached or if its time to live expired
+	 *
+	 * @param id
+	 * @param documentRetriever
+	 *            retrieves the study definition from the Generic Layer
+	 * @return
+	 */
+	public POQMMT000001UVQualityMeasureDocument getQualityMeasureDocument(String id,
+			Callable<POQMMT000001UVQualityMeasureDocument> documentRetriever)
+	{
+		CachedDocument cachedDocument;
+		long nrInvalidationsBeforeRetrieval;
+		synchronized (documents)
+		{
+			cachedDocument = documents.get(id);
+			nrInvalidationsBeforeRetrieval = nrInvalidations;
+		}
+		if (cachedDocument != null && System.currentTimeMillis() - cachedDocument.creationTime <= timeToLive)
+		{
+			return unmarshal(cachedDocument.document);
+		}
+
+		// retrieve outside of the lock, concurrent requests for the same study definition might both retrieve it
+		cachedDocument = new CachedDocument(marshal(retrieve(documentRetriever)));
+
+		synchronized (documents)
+		{
+			if (nrInvalidations == nrInvalidationsBeforeRetrieval) documents.put(id, cachedDocument);
+		}
+		return unmarshal(cachedDocument.document);
+	}
+
+	/**
+	 * Discards the cached study definition with the given Generic Layer id
+	 *
+	 * @param id
+	 */
+	public void invalidate(String id)
+	{
+		synchronized (documents)
+		{
+			documents.remove(id);
+			++nrInvalidations;
+		}
+	}
+
+	private byte[] marshal(POQMMT000001UVQualityMeasureDocument qualityMeasureDocument)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try
+		{
+			hl7JaxbCodec.getMarshaller().marshal(
+					new JAXBElement<POQMMT000001UVQualityMeasureDocument>(QNAME_QUALITY_MEASURE_DOCUMENT,
+							POQMMT000001UVQualityMeasureDocument.class, qualityMeasureDocument), bos);
+		}
+		catch (JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return bos.toByteArray();
+	}
+
+	private POQMMT000001UVQualityMeasureDocument unmarshal(byte[] document)
+	{
+		try
+		{
+			return hl7JaxbCodec.getUnmarshaller()
+					.unmarshal(new StreamSource(new ByteArrayInputStream(document)),
+							POQMMT000001UVQualityMeasureDocument.class).getValue();
+		}
+		catch (JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private POQMMT000001UVQualityMeasureDocument retrieve(
+			Callable<POQMMT000001UVQualityMeasureDocument> documentRetriever)
+	{
+		try
+		{
+			return documentRetriever.call();
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class CachedDocument
+	{
+		private final long creationTime;
+		private final byte[] document;
+
+		public CachedDocument(byte[] document)
+		{
+			this.creationTime = System.currentTimeMillis();
+			this.document = document;
+		}
+	}
+}
@@ -3,7 +3,11 @@ package org.molgenis.lifelines.studymanager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.bind.JAXBElement;
 
@@ -27,6 +31,7 @@ import org.hl7.v3.ST;
 import org.molgenis.catalog.CatalogFolder;
 import org.molgenis.catalog.CatalogItem;
 import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
 import org.molgenis.data.support.QueryImpl;
 import org.molgenis.lifelines.catalog.PoqmObservationCatalogItem;
 import org.molgenis.omx.observ.ObservableFeature;
@@ -35,13 +40,16 @@ import org.molgenis.omx.study.StudyDataRequest;
 import org.molgenis.omx.utils.I18nTools;
 import org.molgenis.study.StudyDefinition;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Iterables;
 
 public class QualityMeasureDocumentStudyDefinition implements StudyDefinition
 {
+	private static final int QUERY_SIZE = 1000;
+
 	private final POQMMT000001UVQualityMeasureDocument qualityMeasureDocument;
 	private final DataService dataService;
+	private List<CatalogFolder> items;
+	private Set<String> itemIds;
 
 	public QualityMeasureDocumentStudyDefinition(POQMMT000001UVQualityMeasureDocument qualityMeasureDocument,
 			DataService dataService)
@@ -108,6 +116,29 @@ public class QualityMeasureDocumentStudyDefinition implements StudyDefinition
 
 	@Override
 	public List<CatalogFolder> getItems()
+	{
+		return new ArrayList<CatalogFolder>(getItemsInternal());
+	}
+
+	/**
+	 * Returns the items of this study definition, the protocols of the items are retrieved once
+	 * 
+	 * @return
+	 */
+	private List<CatalogFolder> getItemsInternal()
+	{
+		if (items == null)
+		{
+			items = createItems();
+
+			itemIds = new HashSet<String>();
+			for (CatalogFolder item : items)
+				itemIds.add(item.getId());
+		}
+		return items;
+	}
+
+	private List<CatalogFolder> createItems()
 	{
 		List<POQMMT000001UVComponent2> components = qualityMeasureDocument.getComponent();
 		if (components == null || components.isEmpty()) return Collections.emptyList();
@@ -117,29 +148,41 @@ public class QualityMeasureDocumentStudyDefinition implements StudyDefinition
 		POQMMT000001UVSection section = component.getSection();
 		if (section == null) return Collections.emptyList();
 
-		return Lists.newArrayList(Lists.transform(section.getEntry(),
-				new Function<POQMMT000001UVEntry, CatalogFolder>()
-				{
-					@Override
-					public CatalogFolder apply(POQMMT000001UVEntry entry)
-					{
-						Protocol protocol = dataService.findOne(Protocol.ENTITY_NAME,
-								new QueryImpl().eq(Protocol.IDENTIFIER, entry.getObservation().getCode().getCode()),
-								Protocol.class);
+		List<POQMMT000001UVEntry> entries = section.getEntry();
 
-						if (protocol == null)
-						{
-							throw new RuntimeException("Unknown Protocol with identifier ["
-									+ entry.getObservation().getCode().getCode() + "]");
-						}
-						return new PoqmObservationCatalogItem(entry.getObservation(), protocol);
-					}
-				}));
+		// retrieve the protocols of all entries at once
+		List<String> protocolIdentifiers = new ArrayList<String>(entries.size());
+		for (POQMMT000001UVEntry entry : entries)
+			protocolIdentifiers.add(entry.getObservation().getCode().getCode());
+
+		Map<String, Protocol> protocols = new HashMap<String, Protocol>();
+		for (List<String> protocolIdentifiersPartition : Iterables.partition(protocolIdentifiers, QUERY_SIZE))
+		{
+			Query q = new QueryImpl().in(Protocol.IDENTIFIER, protocolIdentifiersPartition);
+			for (Protocol protocol : dataService.findAll(Protocol.ENTITY_NAME, q, Protocol.class))
+				protocols.put(protocol.getIdentifier(), protocol);
+		}
+
+		List<CatalogFolder> items = new ArrayList<CatalogFolder>(entries.size());
+		for (POQMMT000001UVEntry entry : entries)
+		{
+			String protocolIdentifier = entry.getObservation().getCode().getCode();
+			Protocol protocol = protocols.get(protocolIdentifier);
+			if (protocol == null)
+			{
+				throw new RuntimeException("Unknown Protocol with identifier [" + protocolIdentifier + "]");
+			}
+			items.add(new PoqmObservationCatalogItem(entry.getObservation(), protocol));
+		}
+		return items;
 	}
 
 	@Override
 	public void setItems(Iterable<CatalogFolder> items)
 	{
+		this.items = null;
+		this.itemIds = null;
+
 		List<POQMMT000001UVComponent2> components = qualityMeasureDocument.getComponent();
 		POQMMT000001UVComponent2 component;
 		if (components == null || components.isEmpty())
@@ -281,16 +324,8 @@ public class QualityMeasureDocumentStudyDefinition implements StudyDefinition
 	@Override
 	public boolean containsItem(CatalogFolder anItem)
 	{
-		boolean contains = false;
-		for (CatalogItem item : getItems())
-		{
-			if (item.getId().equals(anItem.getId()))
-			{
-				contains = true;
-				break;
-			}
-		}
-		return contains;
+		getItemsInternal();
+		return itemIds.contains(anItem.getId());
 	}
 
 	@Override
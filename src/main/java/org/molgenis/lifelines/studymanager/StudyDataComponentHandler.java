@@ -0,0 +1,15 @@
+package org.molgenis.lifelines.studymanager;
+
+import org.hl7.v3.REPCMT000400UV01Component4;
+
+/**
+ * Receives the patient components of a study data response in document order
+ */
+interface StudyDataComponentHandler
+{
+	/**
+	 * @param component
+	 *            complete patient component, containing the patient organizer and its observations
+	 */
+	void component(REPCMT000400UV01Component4 component);
+}
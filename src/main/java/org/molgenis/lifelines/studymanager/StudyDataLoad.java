@@ -0,0 +1,346 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.hl7.v3.ANY;
+import org.hl7.v3.BL;
+import org.hl7.v3.CD;
+import org.hl7.v3.INT;
+import org.hl7.v3.PQ;
+import org.hl7.v3.REAL;
+import org.hl7.v3.REPCMT000100UV01Component3;
+import org.hl7.v3.REPCMT000100UV01Observation;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.hl7.v3.REPCMT000400UV01Component4;
+import org.hl7.v3.ST;
+import org.hl7.v3.TS;
+import org.molgenis.data.DataService;
+import org.molgenis.data.support.QueryImpl;
+import org.molgenis.lifelines.catalog.CatalogIdConverter;
+import org.molgenis.omx.core.RuntimeProperty;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.DataSet;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservationSet;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.omx.observ.value.BoolValue;
+import org.molgenis.omx.observ.value.CategoricalValue;
+import org.molgenis.omx.observ.value.LongValue;
+import org.molgenis.omx.observ.value.StringValue;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Converts the patients of one study data response and writes them in transactions of at most chunkSize patients.
+ * The first transaction is started on creation, the last transaction is committed by {@link #commit()}. With a chunk
+ * size each transaction is a new transaction, a transaction of the caller would otherwise be committed with the first
+ * chunk. Without a chunk size all patients are written in the transaction of the caller, if any.
+ *
+ * A checkpoint stores the number of committed patients. A resumed load skips that number of patients of the new
+ * response, this assumes that the Generic Layer returns the patients of a study definition in the same order on every
+ * request. The checkpoint of a previous load is honoured whether or not a chunk size is configured.
+ */
+class StudyDataLoad implements StudyDataComponentHandler, StudyDataPipeline.Converter, StudyDataPipeline.Writer
+{
+	private static final Logger logger = Logger.getLogger(StudyDataLoad.class);
+
+	private static final String CHECKPOINT_PROPERTY_PREFIX = "lifelines.data.query.checkpoint.";
+	private static final TransactionDefinition TRANSACTION_DEFINITION = new DefaultTransactionDefinition(
+			TransactionDefinition.PROPAGATION_REQUIRED);
+	private static final TransactionDefinition CHUNK_TRANSACTION_DEFINITION = new DefaultTransactionDefinition(
+			TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+	private final DataService dataService;
+	private final PlatformTransactionManager transactionManager;
+	private final int chunkSize;
+	private final String checkpointIdentifier;
+	private final TransactionDefinition transactionDefinition;
+	private TransactionStatus transactionStatus;
+
+	private final DataSet dataSet;
+	private final ObservableFeatureResolver observableFeatureResolver;
+	private final CategoryResolver categoryResolver;
+	private final StudyDataWriter studyDataWriter;
+
+	/** number of patients committed by a previous load */
+	private final int nrSkipComponents;
+	private int nrComponents;
+
+	/**
+	 * @param studyDefinitionId
+	 * @param dataService
+	 * @param transactionManager
+	 * @param batchSize
+	 *            number of observation sets and observed values written per batch
+	 * @param chunkSize
+	 *            number of patients committed per transaction, 0 to load all patients in one transaction
+	 */
+	public StudyDataLoad(String studyDefinitionId, DataService dataService,
+			PlatformTransactionManager transactionManager, int batchSize, int chunkSize)
+	{
+		if (studyDefinitionId == null) throw new IllegalArgumentException("studyDefinitionId is null");
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (transactionManager == null) throw new IllegalArgumentException("transactionManager is null");
+		if (chunkSize < 0) throw new IllegalArgumentException("chunkSize must be 0 or larger");
+		this.dataService = dataService;
+		this.transactionManager = transactionManager;
+		this.chunkSize = chunkSize;
+		this.checkpointIdentifier = getCheckpointIdentifier(studyDefinitionId);
+		this.transactionDefinition = chunkSize > 0 ? CHUNK_TRANSACTION_DEFINITION : TRANSACTION_DEFINITION;
+		this.transactionStatus = transactionManager.getTransaction(transactionDefinition);
+		try
+		{
+			// resolve features and categories of the study
+			String omxId = CatalogIdConverter.catalogOfStudyDefinitionIdToOmxIdentifier(studyDefinitionId);
+			this.dataSet = dataService.findOne(DataSet.ENTITY_NAME, new QueryImpl().eq(DataSet.IDENTIFIER, omxId),
+					DataSet.class);
+			this.observableFeatureResolver = new ObservableFeatureResolver(dataService,
+					dataSet != null ? dataSet.getProtocolUsed() : null);
+			this.categoryResolver = new CategoryResolver(dataService, observableFeatureResolver.getFeatures());
+			this.studyDataWriter = new StudyDataWriter(dataService, batchSize);
+
+			RuntimeProperty checkpoint = getCheckpoint(dataService, checkpointIdentifier);
+			this.nrSkipComponents = checkpoint != null ? Integer.parseInt(checkpoint.getValue()) : 0;
+			if (nrSkipComponents > 0)
+			{
+				logger.info("resuming study data load for study definition [" + studyDefinitionId
+						+ "] after patient " + nrSkipComponents);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			transactionManager.rollback(transactionStatus);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether a previous load of the study data of the given study definition committed one or more chunks
+	 * without completing
+	 *
+	 * @param dataService
+	 * @param studyDefinitionId
+	 * @return
+	 */
+	public static boolean isResumable(DataService dataService, String studyDefinitionId)
+	{
+		return getCheckpoint(dataService, getCheckpointIdentifier(studyDefinitionId)) != null;
+	}
+
+	@Override
+	public void component(REPCMT000400UV01Component4 component)
+	{
+		// patients committed by a previous load are not converted
+		write(nrComponents < nrSkipComponents ? null : convert(component));
+	}
+
+	@Override
+	public PatientObservations convert(REPCMT000400UV01Component4 component)
+	{
+		return convertComponent(component);
+	}
+
+	/**
+	 * Resolves the features and categories of a converted patient and writes the patient as observation set with
+	 * observed values
+	 */
+	@Override
+	public void write(PatientObservations patientObservations)
+	{
+		if (++nrComponents <= nrSkipComponents) return;
+
+		ObservationSet observationSet = new ObservationSet();
+		observationSet.setPartOfDataSet(dataSet);
+
+		List<PatientObservations.Observation> observations = patientObservations.getObservations();
+		List<ObservedValue> observedValues = new ArrayList<ObservedValue>(observations.size());
+		for (PatientObservations.Observation observation : observations)
+		{
+			ObservableFeature observableFeature = observableFeatureResolver.getFeature(observation
+					.getFeatureIdentifier());
+
+			org.molgenis.omx.observ.value.Value value = observation.getValue();
+			if (value == null)
+			{
+				CD code = observation.getCode();
+				Category category = categoryResolver.getCategory(observableFeature, code.getCodeSystem(),
+						code.getCode());
+				if (category == null) continue;
+				CategoricalValue categoricalValue = new CategoricalValue();
+				categoricalValue.setValue(category);
+				value = categoricalValue;
+			}
+
+			ObservedValue observedValue = new ObservedValue();
+			observedValue.setObservationSet(observationSet);
+			observedValue.setFeature(observableFeature);
+			observedValue.setValue(value);
+			observedValues.add(observedValue);
+		}
+		studyDataWriter.add(observationSet, observedValues);
+
+		if (chunkSize > 0 && nrComponents % chunkSize == 0)
+		{
+			studyDataWriter.flush();
+			saveCheckpoint(nrComponents);
+			transactionManager.commit(transactionStatus);
+			transactionStatus = transactionManager.getTransaction(transactionDefinition);
+		}
+	}
+
+	/**
+	 * Writes the remaining patients, removes the checkpoint and commits the last transaction
+	 */
+	public void commit()
+	{
+		studyDataWriter.flush();
+		RuntimeProperty checkpoint = getCheckpoint(dataService, checkpointIdentifier);
+		if (checkpoint != null) dataService.delete(RuntimeProperty.ENTITY_NAME, checkpoint);
+		transactionManager.commit(transactionStatus);
+
+		for (Map.Entry<String, Integer> entry : categoryResolver.getNrMissingValues().entrySet())
+		{
+			logger.error("missing category identifier: " + entry.getKey() + " (" + entry.getValue() + " values)");
+		}
+	}
+
+	/**
+	 * Rolls back the current transaction, chunks that were committed before remain committed
+	 */
+	public void rollback()
+	{
+		transactionManager.rollback(transactionStatus);
+	}
+
+	public boolean isCompleted()
+	{
+		return transactionStatus.isCompleted();
+	}
+
+	/**
+	 * Returns the number of patients written by this load, excluding the patients committed by a previous load
+	 *
+	 * @return
+	 */
+	public int getNrWrittenComponents()
+	{
+		return studyDataWriter.getNrWrittenObservationSets();
+	}
+
+	private void saveCheckpoint(int nrCommittedComponents)
+	{
+		RuntimeProperty checkpoint = getCheckpoint(dataService, checkpointIdentifier);
+		if (checkpoint == null)
+		{
+			checkpoint = new RuntimeProperty();
+			checkpoint.setIdentifier(checkpointIdentifier);
+			checkpoint.setName(checkpointIdentifier.substring(RuntimeProperty.class.getSimpleName().length() + 1));
+			checkpoint.setValue(String.valueOf(nrCommittedComponents));
+			dataService.add(RuntimeProperty.ENTITY_NAME, checkpoint);
+		}
+		else
+		{
+			checkpoint.setValue(String.valueOf(nrCommittedComponents));
+			dataService.update(RuntimeProperty.ENTITY_NAME, checkpoint);
+		}
+	}
+
+	private static String getCheckpointIdentifier(String studyDefinitionId)
+	{
+		return RuntimeProperty.class.getSimpleName() + '_' + CHECKPOINT_PROPERTY_PREFIX + studyDefinitionId;
+	}
+
+	private static RuntimeProperty getCheckpoint(DataService dataService, String identifier)
+	{
+		return dataService.findOne(RuntimeProperty.ENTITY_NAME, new QueryImpl().eq(RuntimeProperty.IDENTIFIER,
+				identifier), RuntimeProperty.class);
+	}
+
+	/**
+	 * Converts the observations of a patient component to OMX values without accessing the database
+	 */
+	private static PatientObservations convertComponent(REPCMT000400UV01Component4 component)
+	{
+		REPCMT000100UV01Organizer organizer = component.getOrganizer().getValue();
+
+		List<REPCMT000100UV01Component3> organizerComponents = organizer.getComponent();
+		PatientObservations patientObservations = new PatientObservations(organizerComponents.size());
+		for (REPCMT000100UV01Component3 organizerComponent : organizerComponents)
+		{
+			REPCMT000100UV01Observation observation = organizerComponent.getObservation().getValue();
+			String featureId = observation.getId().get(0).getRoot();
+
+			ANY anyValue = observation.getValue();
+			if (anyValue instanceof CD) // for CD and CO values
+			{
+				// categorical, category is resolved on write
+				patientObservations.add(featureId, (CD) anyValue);
+			}
+			else
+			{
+				patientObservations.add(featureId, toValue(anyValue));
+			}
+		}
+		return patientObservations;
+	}
+
+	private static org.molgenis.omx.observ.value.Value toValue(ANY anyValue)
+	{
+		if (anyValue instanceof INT)
+		{
+			// integer
+			INT value = (INT) anyValue;
+			// convert to long, not to int
+			LongValue longValue = new LongValue();
+			longValue.setValue(value.getValue().longValue());
+			return longValue;
+		}
+		else if (anyValue instanceof ST)
+		{
+			// string
+			ST value = (ST) anyValue;
+			StringValue stringValue = new StringValue();
+			stringValue.setValue(value.getRepresentation().value());
+			return stringValue;
+		}
+		else if (anyValue instanceof PQ)
+		{
+			// physical quantity
+			PQ value = (PQ) anyValue;
+			StringValue stringValue = new StringValue();
+			stringValue.setValue(value.getValue());
+			return stringValue;
+		}
+		else if (anyValue instanceof TS)
+		{
+			// time
+			TS value = (TS) anyValue;
+			StringValue stringValue = new StringValue();
+			stringValue.setValue(value.getValue());
+			return stringValue;
+		}
+		else if (anyValue instanceof REAL)
+		{
+			// fractional number
+			REAL value = (REAL) anyValue;
+			// conversion to double not always possible, see HL7 docs
+			StringValue stringValue = new StringValue();
+			stringValue.setValue(value.getValue());
+			return stringValue;
+		}
+		else if (anyValue instanceof BL)
+		{
+			// boolean
+			BL value = (BL) anyValue;
+			BoolValue boolValue = new BoolValue();
+			boolValue.setValue(value.isValue());
+			return boolValue;
+		}
+		throw new UnsupportedOperationException("ANY instance not supported: " + anyValue.getClass());
+	}
+}
@@ -0,0 +1,197 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hl7.v3.REPCMT000400UV01Component4;
+
+/**
+ * Imports a study data response in three overlapping stages: a reader thread streams and unmarshals the patient
+ * components, a pool of converter threads converts the observations of each patient to OMX values and the calling
+ * thread writes the converted patients in document order. The stages are connected by a bounded queue of pending
+ * conversions, so the number of patients held in memory does not depend on the size of the response.
+ *
+ * Writing happens on the calling thread, the writer can therefore use the transaction of the caller.
+ */
+class StudyDataPipeline
+{
+	public interface Converter
+	{
+		/**
+		 * Converts a patient component, called on a converter thread
+		 *
+		 * @param component
+		 * @return
+		 */
+		PatientObservations convert(REPCMT000400UV01Component4 component);
+	}
+
+	public interface Writer
+	{
+		/**
+		 * Writes a converted patient, called on the calling thread in document order
+		 *
+		 * @param patientObservations
+		 */
+		void write(PatientObservations patientObservations);
+	}
+
+	private static final Future<PatientObservations> END_OF_STREAM = new FutureTask<PatientObservations>(
+			new Runnable()
+			{
+				@Override
+				public void run()
+				{
+				}
+			}, null);
+
+	private final StudyDataStreamReader studyDataStreamReader;
+	private final int nrConverterThreads;
+	private final int queueSize;
+
+	/**
+	 * @param studyDataStreamReader
+	 *            reader that streams the patient components on the reader thread
+	 * @param nrConverterThreads
+	 *            number of threads that convert patients
+	 * @param queueSize
+	 *            maximum number of patients that are read but not yet written
+	 */
+	public StudyDataPipeline(StudyDataStreamReader studyDataStreamReader, int nrConverterThreads, int queueSize)
+	{
+		if (studyDataStreamReader == null) throw new IllegalArgumentException("studyDataStreamReader is null");
+		if (nrConverterThreads <= 0) throw new IllegalArgumentException("nrConverterThreads must be larger than 0");
+		if (queueSize <= 0) throw new IllegalArgumentException("queueSize must be larger than 0");
+		this.studyDataStreamReader = studyDataStreamReader;
+		this.nrConverterThreads = nrConverterThreads;
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Reads, converts and writes the patient components from the given reader
+	 *
+	 * @param reader
+	 * @param converter
+	 * @param writer
+	 * @return number of patient components read
+	 * @throws XMLStreamException
+	 * @throws JAXBException
+	 */
+	public int run(final XMLStreamReader reader, final Converter converter, Writer writer) throws XMLStreamException,
+			JAXBException
+	{
+		final BlockingQueue<Future<PatientObservations>> queue = new ArrayBlockingQueue<Future<PatientObservations>>(
+				queueSize);
+		final ExecutorService converterExecutor = Executors.newFixedThreadPool(nrConverterThreads);
+		ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+		try
+		{
+			Future<Integer> readerFuture = readerExecutor.submit(new Callable<Integer>()
+			{
+				@Override
+				public Integer call() throws XMLStreamException, JAXBException
+				{
+					try
+					{
+						return studyDataStreamReader.readComponents(reader, new StudyDataComponentHandler()
+						{
+							@Override
+							public void component(final REPCMT000400UV01Component4 component)
+							{
+								put(queue, converterExecutor.submit(new Callable<PatientObservations>()
+								{
+									@Override
+									public PatientObservations call()
+									{
+										return converter.convert(component);
+									}
+								}));
+							}
+						});
+					}
+					finally
+					{
+						// the writer stopped taking from the queue if the reader was interrupted
+						if (!Thread.currentThread().isInterrupted()) put(queue, END_OF_STREAM);
+					}
+				}
+			});
+
+			try
+			{
+				for (Future<PatientObservations> future = take(queue); future != END_OF_STREAM; future = take(queue))
+				{
+					writer.write(get(future));
+				}
+				return get(readerFuture);
+			}
+			finally
+			{
+				// stops the reader if writing failed
+				readerFuture.cancel(true);
+			}
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof XMLStreamException) throw (XMLStreamException) cause;
+			if (cause instanceof JAXBException) throw (JAXBException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			readerExecutor.shutdownNow();
+			converterExecutor.shutdownNow();
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws ExecutionException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static <T> T take(BlockingQueue<T> queue)
+	{
+		try
+		{
+			return queue.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static <T> void put(BlockingQueue<T> queue, T element)
+	{
+		try
+		{
+			queue.put(element);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+}
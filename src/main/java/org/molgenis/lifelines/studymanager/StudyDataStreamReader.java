@@ -0,0 +1,68 @@
+package org.molgenis.lifelines.studymanager;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hl7.v3.REPCMT000400UV01Component4;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+
+/**
+ * Reads a study data response (REPCMT000400UV01ActCategory) without materializing the whole response in memory. The
+ * response is read with StAX and each patient component of the act category is unmarshalled and reported to a
+ * {@link StudyDataComponentHandler}, one at a time.
+ */
+class StudyDataStreamReader
+{
+	private static final String ELEMENT_COMPONENT = "component";
+
+	private final Hl7JaxbCodec hl7JaxbCodec;
+
+	public StudyDataStreamReader(Hl7JaxbCodec hl7JaxbCodec)
+	{
+		if (hl7JaxbCodec == null) throw new IllegalArgumentException("hl7JaxbCodec is null");
+		this.hl7JaxbCodec = hl7JaxbCodec;
+	}
+
+	/**
+	 * Reads the patient components from the given reader and reports them to the handler
+	 *
+	 * @param reader
+	 * @param handler
+	 * @return number of patient components read
+	 * @throws XMLStreamException
+	 * @throws JAXBException
+	 */
+	public int readComponents(XMLStreamReader reader, StudyDataComponentHandler handler) throws XMLStreamException,
+			JAXBException
+	{
+		Unmarshaller unmarshaller = hl7JaxbCodec.getUnmarshaller();
+
+		int nrComponents = 0;
+		int depth = 0;
+		while (reader.hasNext())
+		{
+			if (reader.isStartElement())
+			{
+				// patient components are the component children of the act category root element
+				if (depth == 1 && reader.getLocalName().equals(ELEMENT_COMPONENT))
+				{
+					// moves the reader to the event after the end of the component
+					REPCMT000400UV01Component4 component = unmarshaller.unmarshal(reader,
+							REPCMT000400UV01Component4.class).getValue();
+					handler.component(component);
+					++nrComponents;
+					continue;
+				}
+				++depth;
+			}
+			else if (reader.isEndElement())
+			{
+				--depth;
+			}
+			reader.next();
+		}
+		return nrComponents;
+	}
+}
@@ -0,0 +1,111 @@
+package org.molgenis.lifelines.studymanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Entity;
+import org.molgenis.omx.observ.ObservationSet;
+import org.molgenis.omx.observ.ObservedValue;
+
+/**
+ * Collects the observation sets and observed values created while importing study data and writes them to the
+ * database in batches instead of one entity at a time. Observation sets are written before observed values so that
+ * values always refer to sets that were written before. After each batch the persistence context is flushed and
+ * cleared to keep its size independent of the number of imported patients.
+ *
+ * Batches are only written between patients, an observation set and its values are always written together.
+ */
+class StudyDataWriter
+{
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final DataService dataService;
+	private final int batchSize;
+
+	private final List<ObservationSet> observationSets;
+	private final List<ObservedValue> observedValues;
+
+	private int nrWrittenObservationSets;
+	private int nrWrittenObservedValues;
+
+	public StudyDataWriter(DataService dataService)
+	{
+		this(dataService, DEFAULT_BATCH_SIZE);
+	}
+
+	public StudyDataWriter(DataService dataService, int batchSize)
+	{
+		if (dataService == null) throw new IllegalArgumentException("dataService is null");
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be larger than 0");
+		this.dataService = dataService;
+		this.batchSize = batchSize;
+		this.observationSets = new ArrayList<ObservationSet>();
+		this.observedValues = new ArrayList<ObservedValue>(batchSize);
+	}
+
+	/**
+	 * Add the observation set of a patient and its observed values, writes the buffered entities if the batch is full
+	 *
+	 * @param observationSet
+	 * @param values
+	 *            observed values of the observation set
+	 */
+	public void add(ObservationSet observationSet, List<ObservedValue> values)
+	{
+		observationSets.add(observationSet);
+		observedValues.addAll(values);
+		if (observationSets.size() + observedValues.size() >= batchSize) flush();
+	}
+
+	/**
+	 * Write all buffered entities to the database
+	 */
+	public void flush()
+	{
+		if (observationSets.isEmpty()) return;
+		int nrObservationSets = observationSets.size();
+		int nrObservedValues = observedValues.size();
+
+		write(ObservationSet.ENTITY_NAME, observationSets);
+		write(ObservedValue.ENTITY_NAME, observedValues);
+
+		// all repositories share one persistence context, flushing and clearing one of them suffices
+		CrudRepository observedValueRepository = dataService.getCrudRepository(ObservedValue.ENTITY_NAME);
+		observedValueRepository.flush();
+		observedValueRepository.clearCache();
+
+		nrWrittenObservationSets += nrObservationSets;
+		nrWrittenObservedValues += nrObservedValues;
+	}
+
+	/**
+	 * Returns the number of observation sets written to the database
+	 *
+	 * @return
+	 */
+	public int getNrWrittenObservationSets()
+	{
+		return nrWrittenObservationSets;
+	}
+
+	/**
+	 * Returns the number of observed values written to the database
+	 *
+	 * @return
+	 */
+	public int getNrWrittenObservedValues()
+	{
+		return nrWrittenObservedValues;
+	}
+
+	private void write(String entityName, List<? extends Entity> entities)
+	{
+		if (!entities.isEmpty())
+		{
+			dataService.add(entityName, entities);
+			entities.clear();
+		}
+	}
+}
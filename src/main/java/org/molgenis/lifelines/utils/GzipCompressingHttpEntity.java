@@ -0,0 +1,65 @@
+package org.molgenis.lifelines.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * Compress the content of a wrapped entity with gzip while it is written out, without intermediate buffering in
+ * memory. Unlike GzipCompressingEntity this entity does not read the content of the wrapped entity, so it can wrap an
+ * {@link OutputStreamHttpEntity}.
+ */
+public class GzipCompressingHttpEntity extends HttpEntityWrapper
+{
+	private static final String GZIP_CODEC = "gzip";
+
+	public GzipCompressingHttpEntity(HttpEntity entity)
+	{
+		super(entity);
+	}
+
+	@Override
+	public Header getContentEncoding()
+	{
+		return new BasicHeader(HTTP.CONTENT_ENCODING, GZIP_CODEC);
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked()
+	{
+		return true;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException
+	{
+		GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outstream);
+		try
+		{
+			wrappedEntity.writeTo(gzipOutputStream);
+		}
+		finally
+		{
+			gzipOutputStream.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.molgenis.lifelines.utils;
+
+import java.net.URL;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+/**
+ * Marshals and unmarshals HL7 v3 documents. One JAXBContext covers all org.hl7.v3 types and is created once per
+ * codec. Marshallers and unmarshallers are not thread-safe, they are cheap to create from the shared context and are
+ * created per use instead of kept per thread, so that no thread keeps a reference to the codec.
+ *
+ * If a schema is given it is compiled once. Only whole HL7 documents can be validated against the schema, most
+ * documents are read as fragments (e.g. one organizer or patient component at a time), unmarshallers therefore only
+ * validate if requested.
+ */
+public class Hl7JaxbCodec
+{
+	private static final Logger logger = Logger.getLogger(Hl7JaxbCodec.class);
+
+	private static final String HL7_CONTEXT_PATH = "org.hl7.v3";
+
+	private final JAXBContext jaxbContext;
+	private final Schema schema;
+
+	public Hl7JaxbCodec()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param schemaUrl
+	 *            location of the HL7 schema that whole documents are validated against, null to skip validation
+	 */
+	public Hl7JaxbCodec(URL schemaUrl)
+	{
+		try
+		{
+			this.jaxbContext = JAXBContext.newInstance(HL7_CONTEXT_PATH);
+		}
+		catch (JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		if (schemaUrl != null)
+		{
+			try
+			{
+				this.schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(schemaUrl);
+			}
+			catch (SAXException e)
+			{
+				logger.error("error compiling HL7 schema [" + schemaUrl + "]", e);
+				throw new RuntimeException(e);
+			}
+		}
+		else this.schema = null;
+	}
+
+	/**
+	 * Returns a new marshaller, the marshaller must not be passed to other threads
+	 *
+	 * @return
+	 */
+	public Marshaller getMarshaller()
+	{
+		try
+		{
+			return jaxbContext.createMarshaller();
+		}
+		catch (JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns a new unmarshaller that does not validate, the unmarshaller must not be passed to other threads
+	 *
+	 * @return
+	 */
+	public Unmarshaller getUnmarshaller()
+	{
+		try
+		{
+			return jaxbContext.createUnmarshaller();
+		}
+		catch (JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns a new unmarshaller that validates whole documents against the HL7 schema, the unmarshaller must not be
+	 * passed to other threads. Fragments are rejected by a validating unmarshaller, use {@link #getUnmarshaller()} to
+	 * read fragments.
+	 *
+	 * @return unmarshaller, does not validate if no schema was given
+	 */
+	public Unmarshaller getValidatingUnmarshaller()
+	{
+		Unmarshaller unmarshaller = getUnmarshaller();
+		unmarshaller.setSchema(schema);
+		return unmarshaller;
+	}
+
+	/**
+	 * Returns the compiled HL7 schema
+	 *
+	 * @return schema or null if documents are not validated
+	 */
+	public Schema getSchema()
+	{
+		return schema;
+	}
+}
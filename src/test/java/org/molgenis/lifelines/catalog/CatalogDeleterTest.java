@@ -0,0 +1,177 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Entity;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+
+public class CatalogDeleterTest
+{
+	private DataService dataService;
+	private Protocol rootProtocol;
+	private Protocol protocol;
+	private Protocol subprotocol;
+	private ObservableFeature feature1;
+	private ObservableFeature feature2;
+	private Category category1;
+	private Category category2;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		feature1 = new ObservableFeature();
+		feature1.setId(11);
+		feature2 = new ObservableFeature();
+		feature2.setId(12);
+		category1 = new Category();
+		category1.setId(21);
+		category1.setObservableFeature(feature1);
+		category2 = new Category();
+		category2.setId(22);
+		category2.setObservableFeature(feature2);
+
+		subprotocol = new Protocol();
+		subprotocol.setId(3);
+		subprotocol.setFeatures(Arrays.asList(feature1, feature2));
+		protocol = new Protocol();
+		protocol.setId(2);
+		protocol.setSubprotocols(Arrays.asList(subprotocol));
+		rootProtocol = new Protocol();
+		rootProtocol.setId(1);
+		rootProtocol.setSubprotocols(Arrays.asList(protocol));
+
+		dataService = mock(DataService.class);
+		when(dataService.getCrudRepository(any(String.class))).thenReturn(mock(CrudRepository.class));
+		when(dataService.findAll(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class))).thenAnswer(
+				findAllByQueryValue(rootProtocol, protocol, subprotocol));
+		when(dataService.findAll(eq(ObservableFeature.ENTITY_NAME), any(Query.class), eq(ObservableFeature.class)))
+				.thenAnswer(findAllByQueryValue(feature1, feature2));
+		when(dataService.findAll(eq(Category.ENTITY_NAME), any(Query.class), eq(Category.class))).thenAnswer(
+				new Answer<Iterable<Category>>()
+				{
+					@Override
+					public Iterable<Category> answer(InvocationOnMock invocation)
+					{
+						List<Category> categories = new ArrayList<Category>();
+						for (Category category : Arrays.asList(category1, category2))
+						{
+							if (Iterables.contains(getQueryValue(invocation), category.getObservableFeature()
+									.getIdValue())) categories.add(category);
+						}
+						return categories;
+					}
+				});
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogDeleter()
+	{
+		new CatalogDeleter(dataService, 0);
+	}
+
+	@Test
+	public void deleteParentsFirst()
+	{
+		CatalogDeleter catalogDeleter = new CatalogDeleter(dataService, 1);
+		catalogDeleter.delete(rootProtocol);
+
+		InOrder inOrder = inOrder(dataService);
+		inOrder.verify(dataService).delete(Protocol.ENTITY_NAME, Arrays.asList(rootProtocol));
+		inOrder.verify(dataService).delete(Protocol.ENTITY_NAME, Arrays.asList(protocol));
+		inOrder.verify(dataService).delete(Protocol.ENTITY_NAME, Arrays.asList(subprotocol));
+		inOrder.verify(dataService).delete(Category.ENTITY_NAME, Arrays.asList(category1));
+		inOrder.verify(dataService).delete(Category.ENTITY_NAME, Arrays.asList(category2));
+		inOrder.verify(dataService).delete(ObservableFeature.ENTITY_NAME, Arrays.asList(feature1));
+		inOrder.verify(dataService).delete(ObservableFeature.ENTITY_NAME, Arrays.asList(feature2));
+		assertEquals(catalogDeleter.getNrDeletedEntities(), 7);
+	}
+
+	@Test
+	public void deleteKeepsFeaturesReferredToByStudyData()
+	{
+		// feature1 has observed values, feature2 has none
+		ObservedValue observedValue = new ObservedValue();
+		observedValue.setFeature(feature1);
+		when(dataService.count(eq(ObservedValue.ENTITY_NAME), any(Query.class))).thenReturn(1l);
+		when(dataService.findAll(eq(ObservedValue.ENTITY_NAME), any(Query.class), eq(ObservedValue.class)))
+				.thenReturn(Arrays.asList(observedValue));
+
+		CatalogDeleter catalogDeleter = new CatalogDeleter(dataService, 3);
+		catalogDeleter.delete(rootProtocol);
+
+		verify(dataService).delete(Protocol.ENTITY_NAME, Arrays.asList(rootProtocol, protocol, subprotocol));
+		verify(dataService).delete(Category.ENTITY_NAME, Arrays.asList(category2));
+		verify(dataService).delete(ObservableFeature.ENTITY_NAME, Arrays.asList(feature2));
+		assertEquals(catalogDeleter.getNrDeletedEntities(), 5);
+	}
+
+	@Test
+	public void deleteKeepsUnitsOfOtherFeatures()
+	{
+		OntologyTerm unit1 = new OntologyTerm();
+		unit1.setId(31);
+		OntologyTerm unit2 = new OntologyTerm();
+		unit2.setId(32);
+		feature1.setUnit(unit1);
+		feature2.setUnit(unit2);
+		ObservableFeature otherFeature = new ObservableFeature();
+		otherFeature.setId(13);
+		otherFeature.setUnit(unit1);
+		when(dataService.findAll(eq(ObservableFeature.ENTITY_NAME), any(Query.class), eq(ObservableFeature.class)))
+				.thenAnswer(findAllByQueryValue(feature1, feature2)).thenReturn(Arrays.asList(otherFeature));
+		when(dataService.findAll(eq(OntologyTerm.ENTITY_NAME), any(Query.class), eq(OntologyTerm.class)))
+				.thenReturn(Arrays.asList(unit1, unit2));
+
+		CatalogDeleter catalogDeleter = new CatalogDeleter(dataService, 2);
+		catalogDeleter.delete(rootProtocol);
+
+		verify(dataService).delete(OntologyTerm.ENTITY_NAME, Arrays.asList(unit2));
+	}
+
+	private static Answer<Iterable<Entity>> findAllByQueryValue(final Entity... entities)
+	{
+		return new Answer<Iterable<Entity>>()
+		{
+			@Override
+			public Iterable<Entity> answer(InvocationOnMock invocation)
+			{
+				Iterable<?> ids = getQueryValue(invocation);
+				List<Entity> result = new ArrayList<Entity>();
+				for (Entity entity : entities)
+				{
+					if (Iterables.contains(ids, entity.getIdValue())) result.add(entity);
+				}
+				return result;
+			}
+		};
+	}
+
+	private static Iterable<?> getQueryValue(InvocationOnMock invocation)
+	{
+		return (Iterable<?>) ((Query) invocation.getArguments()[1]).getRules().get(0).getValue();
+	}
+}
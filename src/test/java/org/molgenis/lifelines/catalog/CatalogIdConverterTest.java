@@ -1,6 +1,8 @@
 package org.molgenis.lifelines.catalog;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.Test;
 
@@ -27,6 +29,14 @@ public class CatalogIdConverterTest
 		CatalogIdConverter.omxIdentifierToCatalogId("bogus");
 	}
 
+	@Test
+	public void isCatalogOmxIdentifier()
+	{
+		assertTrue(CatalogIdConverter.isCatalogOmxIdentifier("catalog_4"));
+		assertFalse(CatalogIdConverter.isCatalogOmxIdentifier("catalog_studydefinition_4"));
+		assertFalse(CatalogIdConverter.isCatalogOmxIdentifier("bogus"));
+	}
+
 	@Test
 	public void catalogOfStudyDefinitionIdToOmxIdentifier()
 	{
@@ -0,0 +1,152 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.omx.search.DataSetsIndexer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogIndexerTest
+{
+	private DataSetsIndexer dataSetsIndexer;
+	private CatalogIndexer catalogIndexer;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataSetsIndexer = mock(DataSetsIndexer.class);
+		catalogIndexer = new CatalogIndexer(dataSetsIndexer, 1);
+	}
+
+	@AfterMethod
+	public void afterMethod()
+	{
+		catalogIndexer.shutdown();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogIndexer()
+	{
+		new CatalogIndexer(dataSetsIndexer, 0);
+	}
+
+	@Test
+	public void indexWithoutTransaction()
+	{
+		catalogIndexer.index(1, new CatalogLoadJob("1", false));
+		verify(dataSetsIndexer, timeout(5000)).indexProtocolsSynced(Collections.<Object> singletonList(1));
+	}
+
+	@Test
+	public void indexAfterCommit() throws InterruptedException
+	{
+		TransactionSynchronizationManager.initSynchronization();
+		try
+		{
+			catalogIndexer.index(1, new CatalogLoadJob("1", false));
+			Thread.sleep(100);
+			verify(dataSetsIndexer, never()).indexProtocolsSynced(Collections.<Object> singletonList(1));
+
+			for (TransactionSynchronization transactionSynchronization : TransactionSynchronizationManager
+					.getSynchronizations())
+				transactionSynchronization.afterCommit();
+		}
+		finally
+		{
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		verify(dataSetsIndexer, timeout(5000)).indexProtocolsSynced(Collections.<Object> singletonList(1));
+	}
+
+	@Test
+	public void indexJoinsWaitingRequest() throws InterruptedException
+	{
+		CountDownLatch indexingStarted = new CountDownLatch(1);
+		CountDownLatch indexingAllowed = new CountDownLatch(1);
+		blockIndexing(1, indexingStarted, indexingAllowed);
+
+		catalogIndexer.index(1, new CatalogLoadJob("1", false));
+		indexingStarted.await();
+		CatalogLoadJob catalogLoadJob1 = new CatalogLoadJob("2", false);
+		catalogIndexer.index(2, catalogLoadJob1);
+		CatalogLoadJob catalogLoadJob2 = new CatalogLoadJob("2", false);
+		catalogIndexer.index(2, catalogLoadJob2);
+		indexingAllowed.countDown();
+
+		verify(dataSetsIndexer, timeout(5000)).indexProtocolsSynced(Collections.<Object> singletonList(2));
+		waitUntilDone(catalogLoadJob2);
+		assertEquals(catalogLoadJob1.getPhase(), CatalogLoadJob.Phase.FINISHED);
+		assertEquals(catalogLoadJob2.getPhase(), CatalogLoadJob.Phase.FINISHED);
+		verify(dataSetsIndexer, times(1)).indexProtocolsSynced(Collections.<Object> singletonList(2));
+	}
+
+	@Test
+	public void indexQueueFullBlocks() throws InterruptedException
+	{
+		CountDownLatch indexingStarted = new CountDownLatch(1);
+		CountDownLatch indexingAllowed = new CountDownLatch(1);
+		blockIndexing(1, indexingStarted, indexingAllowed);
+
+		catalogIndexer.index(1, new CatalogLoadJob("1", false));
+		indexingStarted.await();
+		catalogIndexer.index(2, new CatalogLoadJob("2", false));
+		final CatalogLoadJob catalogLoadJob = new CatalogLoadJob("3", false);
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				catalogIndexer.index(3, catalogLoadJob);
+			}
+		};
+		thread.start();
+		thread.join(200);
+		assertTrue(thread.isAlive());
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.INDEX);
+		indexingAllowed.countDown();
+
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		verify(dataSetsIndexer, timeout(5000)).indexProtocolsSynced(Collections.<Object> singletonList(2));
+		verify(dataSetsIndexer, timeout(5000)).indexProtocolsSynced(Collections.<Object> singletonList(3));
+		waitUntilDone(catalogLoadJob);
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.FINISHED);
+	}
+
+	private void blockIndexing(Integer rootProtocolId, final CountDownLatch indexingStarted,
+			final CountDownLatch indexingAllowed)
+	{
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws InterruptedException
+			{
+				indexingStarted.countDown();
+				indexingAllowed.await();
+				return null;
+			}
+		}).when(dataSetsIndexer).indexProtocolsSynced(Collections.<Object> singletonList(rootProtocolId));
+	}
+
+	private void waitUntilDone(CatalogLoadJob catalogLoadJob) throws InterruptedException
+	{
+		for (int i = 0; i < 100 && !catalogLoadJob.isDone(); ++i)
+			Thread.sleep(50);
+	}
+}
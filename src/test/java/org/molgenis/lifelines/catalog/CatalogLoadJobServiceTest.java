@@ -0,0 +1,87 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import org.molgenis.catalog.UnknownCatalogException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogLoadJobServiceTest
+{
+	private LifeLinesCatalogManagerService catalogManagerService;
+	private CatalogLoadJobService catalogLoadJobService;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		catalogManagerService = mock(LifeLinesCatalogManagerService.class);
+		catalogLoadJobService = new CatalogLoadJobService(catalogManagerService,
+				mock(PlatformTransactionManager.class), 1);
+	}
+
+	@AfterMethod
+	public void afterMethod()
+	{
+		catalogLoadJobService.shutdown();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogLoadJobService()
+	{
+		new CatalogLoadJobService(catalogManagerService, mock(PlatformTransactionManager.class), 0);
+	}
+
+	@Test
+	public void loadCatalog() throws Exception
+	{
+		CatalogLoadJob catalogLoadJob = catalogLoadJobService.loadCatalog("1");
+		assertNotNull(catalogLoadJobService.getJob(catalogLoadJob.getId()));
+		waitUntilDone(catalogLoadJob);
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.FINISHED);
+		verify(catalogManagerService).loadCatalog("1", catalogLoadJob);
+	}
+
+	@Test
+	public void loadCatalogFailed() throws Exception
+	{
+		doThrow(new UnknownCatalogException("unknown")).when(catalogManagerService).loadCatalog(any(String.class),
+				any(CatalogLoadJob.class));
+		CatalogLoadJob catalogLoadJob = catalogLoadJobService.loadCatalog("1");
+		waitUntilDone(catalogLoadJob);
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.FAILED);
+		assertNotNull(catalogLoadJob.getErrorMessage());
+	}
+
+	@Test
+	public void reloadCatalog() throws Exception
+	{
+		CatalogLoadJob catalogLoadJob = catalogLoadJobService.reloadCatalog("2", "1");
+		waitUntilDone(catalogLoadJob);
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.FINISHED);
+		verify(catalogManagerService).reloadCatalog("2", "1", catalogLoadJob);
+	}
+
+	@Test
+	public void loadCatalogOfStudyDefinition() throws Exception
+	{
+		CatalogLoadJob catalogLoadJob = catalogLoadJobService.loadCatalogOfStudyDefinition("1");
+		assertTrue(catalogLoadJob.isCatalogOfStudyDefinition());
+		waitUntilDone(catalogLoadJob);
+		assertEquals(catalogLoadJob.getPhase(), CatalogLoadJob.Phase.FINISHED);
+		verify(catalogManagerService).loadCatalogOfStudyDefinition("1", catalogLoadJob);
+	}
+
+	private void waitUntilDone(CatalogLoadJob catalogLoadJob) throws InterruptedException
+	{
+		for (int i = 0; i < 100 && !catalogLoadJob.isDone(); ++i)
+			Thread.sleep(50);
+	}
+}
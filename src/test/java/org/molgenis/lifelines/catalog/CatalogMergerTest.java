@@ -0,0 +1,199 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.omx.observ.Protocol;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogMergerTest
+{
+	private DataService dataService;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataService = mock(DataService.class);
+		when(dataService.getCrudRepository(Protocol.ENTITY_NAME)).thenReturn(mock(CrudRepository.class));
+		when(dataService.findAll(eq(Category.ENTITY_NAME), any(Query.class), eq(Category.class))).thenReturn(
+				Collections.<Category> emptyList());
+	}
+
+	@Test
+	public void mergeUnchanged()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog", "LifeLines");
+		existingRootProtocol.setSubprotocols(Arrays.asList(createProtocol(2, "protocol", "protocol")));
+
+		Protocol rootProtocol = createProtocol(null, "catalog", "LifeLines");
+		rootProtocol.setSubprotocols(Arrays.asList(createProtocol(null, "protocol", "protocol")));
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", rootProtocol, "1", new CatalogEntityList());
+		assertEquals(catalogMerger.getNrInserts(), 0);
+		assertEquals(catalogMerger.getNrUpdates(), 0);
+		verify(dataService, never()).add(any(String.class), any(Iterable.class));
+		verify(dataService, never()).update(any(String.class), any(Iterable.class));
+	}
+
+	@Test
+	public void mergeGeneratedIdentifiers()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog", "LifeLines");
+		Protocol existingCohortProtocol = createProtocol(2, "0a1b2c3d-0000-4000-8000-0123456789ab", "cohort");
+		existingRootProtocol.setSubprotocols(Arrays.asList(existingCohortProtocol));
+
+		Protocol rootProtocol = createProtocol(null, "catalog", "LifeLines");
+		rootProtocol.setSubprotocols(Arrays.asList(createProtocol(null, "9f8e7d6c-0000-4000-8000-0123456789ab",
+				"cohort")));
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", rootProtocol, "1", new CatalogEntityList());
+		assertEquals(catalogMerger.getNrInserts(), 0);
+		assertEquals(catalogMerger.getNrUpdates(), 0);
+	}
+
+	@Test
+	public void mergeChanged()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog", "LifeLines");
+		Protocol existingRemovedProtocol = createProtocol(2, "removed", "removed");
+		existingRootProtocol.setSubprotocols(Arrays.asList(existingRemovedProtocol));
+
+		Protocol rootProtocol = createProtocol(null, "catalog", "LifeLines");
+		Protocol newProtocol = createProtocol(null, "new", "new");
+		ObservableFeature newFeature = new ObservableFeature();
+		newFeature.setIdentifier("feature");
+		newFeature.setName("feature");
+		newProtocol.setFeatures(Arrays.asList(newFeature));
+		rootProtocol.setSubprotocols(Arrays.asList(newProtocol));
+
+		CatalogEntityList catalogEntities = new CatalogEntityList();
+		Category category = new Category();
+		category.setValueCode("1");
+		category.setObservableFeature(newFeature);
+		catalogEntities.add(category);
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", rootProtocol, "1", catalogEntities);
+		assertEquals(catalogMerger.getNrInserts(), 3);
+		assertEquals(catalogMerger.getNrDeactivations(), 1);
+		assertEquals(catalogMerger.getNrUpdates(), 2);
+		assertFalse(existingRemovedProtocol.getActive());
+		assertTrue(existingRootProtocol.getActive());
+		assertEquals(existingRootProtocol.getSubprotocols(), Arrays.asList(newProtocol, existingRemovedProtocol));
+		verify(dataService).add(eq(Category.ENTITY_NAME), any(Iterable.class));
+		verify(dataService).update(eq(Protocol.ENTITY_NAME), any(Iterable.class));
+	}
+
+	@Test
+	public void mergeNewRelease()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog_1", "LifeLines");
+		Protocol existingMeasurementProtocol = createProtocol(2, "1:2.1_1/2.6_11", "measurement");
+		Protocol existingObservationProtocol = createProtocol(3, "observation.1.11.1", "observation");
+		existingRootProtocol.setSubprotocols(Arrays.asList(existingMeasurementProtocol));
+		existingMeasurementProtocol.setSubprotocols(Arrays.asList(existingObservationProtocol));
+
+		Protocol rootProtocol = createProtocol(null, "catalog_2", "LifeLines");
+		Protocol measurementProtocol = createProtocol(null, "2:2.1_1/2.6_11", "measurement");
+		Protocol observationProtocol = createProtocol(null, "observation.1.11.2", "observation");
+		rootProtocol.setSubprotocols(Arrays.asList(measurementProtocol));
+		measurementProtocol.setSubprotocols(Arrays.asList(observationProtocol));
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", rootProtocol, "2", new CatalogEntityList());
+		assertEquals(catalogMerger.getNrInserts(), 0);
+		assertEquals(catalogMerger.getNrUpdates(), 3);
+		assertEquals(catalogMerger.getNrDeactivations(), 0);
+		assertEquals(existingRootProtocol.getIdentifier(), "catalog_2");
+		assertEquals(existingMeasurementProtocol.getIdentifier(), "2:2.1_1/2.6_11");
+		assertEquals(existingObservationProtocol.getIdentifier(), "observation.1.11.2");
+		assertEquals(existingMeasurementProtocol.getSubprotocols(), Arrays.asList(existingObservationProtocol));
+		verify(dataService, never()).add(any(String.class), any(Iterable.class));
+	}
+
+	@Test
+	public void mergeRemovedFeature()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog", "LifeLines");
+		Protocol existingProtocol = createProtocol(2, "protocol", "protocol");
+		ObservableFeature existingFeature = createFeature(11, "feature");
+		ObservableFeature existingRemovedFeature = createFeature(12, "removed");
+		existingProtocol.setFeatures(Arrays.asList(existingFeature, existingRemovedFeature));
+		existingRootProtocol.setSubprotocols(Arrays.asList(existingProtocol));
+		Category existingCategory = new Category();
+		existingCategory.setValueCode("1");
+		existingCategory.setObservableFeature(existingRemovedFeature);
+		when(dataService.findAll(eq(Category.ENTITY_NAME), any(Query.class), eq(Category.class))).thenReturn(
+				Arrays.asList(existingCategory));
+
+		Protocol rootProtocol = createProtocol(null, "catalog", "LifeLines");
+		Protocol protocol = createProtocol(null, "protocol", "protocol");
+		protocol.setFeatures(Arrays.asList(createFeature(null, "feature")));
+		rootProtocol.setSubprotocols(Arrays.asList(protocol));
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", rootProtocol, "1", new CatalogEntityList());
+		assertEquals(catalogMerger.getNrDeletions(), 2);
+		assertEquals(existingProtocol.getFeatures(), Arrays.asList(existingFeature));
+		verify(dataService).delete(Category.ENTITY_NAME, Arrays.asList(existingCategory));
+		verify(dataService).delete(ObservableFeature.ENTITY_NAME, Arrays.asList(existingRemovedFeature));
+	}
+
+	@Test
+	public void mergeRemovedFeatureReferredToByStudyData()
+	{
+		Protocol existingRootProtocol = createProtocol(1, "catalog", "LifeLines");
+		ObservableFeature existingRemovedFeature = createFeature(11, "removed");
+		existingRootProtocol.setFeatures(Arrays.asList(existingRemovedFeature));
+		ObservedValue observedValue = new ObservedValue();
+		observedValue.setFeature(existingRemovedFeature);
+		when(dataService.count(eq(ObservedValue.ENTITY_NAME), any(Query.class))).thenReturn(1l);
+		when(dataService.findAll(eq(ObservedValue.ENTITY_NAME), any(Query.class), eq(ObservedValue.class)))
+				.thenReturn(Arrays.asList(observedValue));
+
+		CatalogMerger catalogMerger = new CatalogMerger(dataService, new CatalogWriter(dataService));
+		catalogMerger.merge(existingRootProtocol, "1", createProtocol(null, "catalog", "LifeLines"), "1",
+				new CatalogEntityList());
+		assertEquals(catalogMerger.getNrDeletions(), 0);
+		assertEquals(existingRootProtocol.getFeatures(), Collections.emptyList());
+		verify(dataService, never()).delete(any(String.class), any(Iterable.class));
+	}
+
+	private ObservableFeature createFeature(Integer id, String identifier)
+	{
+		ObservableFeature feature = new ObservableFeature();
+		feature.setId(id);
+		feature.setIdentifier(identifier);
+		feature.setName(identifier);
+		return feature;
+	}
+
+	private Protocol createProtocol(Integer id, String identifier, String name)
+	{
+		Protocol protocol = new Protocol();
+		protocol.setId(id);
+		protocol.setIdentifier(identifier);
+		protocol.setName(name);
+		protocol.setActive(true);
+		return protocol;
+	}
+}
@@ -0,0 +1,46 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.molgenis.catalog.CatalogMeta;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogReleaseCacheTest
+{
+	private Callable<Iterable<CatalogMeta>> catalogReleasesLoader;
+	private CatalogMeta catalogMeta;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void beforeMethod() throws Exception
+	{
+		catalogReleasesLoader = mock(Callable.class);
+		catalogMeta = new CatalogMeta("1", "catalog");
+		when(catalogReleasesLoader.call()).thenReturn(Arrays.asList(catalogMeta));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogReleaseCache()
+	{
+		new CatalogReleaseCache(catalogReleasesLoader, 0);
+	}
+
+	@Test
+	public void getCatalogReleases() throws Exception
+	{
+		CatalogReleaseCache catalogReleaseCache = new CatalogReleaseCache(catalogReleasesLoader, 60000);
+		assertEquals(catalogReleaseCache.getCatalogReleases(), Arrays.asList(catalogMeta));
+		assertEquals(catalogReleaseCache.getCatalogRelease("1"), catalogMeta);
+		assertNull(catalogReleaseCache.getCatalogRelease("2"));
+		verify(catalogReleasesLoader, times(1)).call();
+	}
+}
@@ -0,0 +1,71 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.v3.CD;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogSnapshotStoreTest
+{
+	private File directory;
+	private CatalogSnapshotStore catalogSnapshotStore;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException
+	{
+		directory = File.createTempFile("catalogs", null);
+		directory.delete();
+		catalogSnapshotStore = new CatalogSnapshotStore(directory);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException
+	{
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void read()
+	{
+		assertNull(catalogSnapshotStore.read("1"));
+	}
+
+	@Test
+	public void writeRead()
+	{
+		CD code = new CD();
+		code.setCode("code");
+		REPCMT000100UV01Organizer catalog = new REPCMT000100UV01Organizer();
+		catalog.setCode(code);
+
+		catalogSnapshotStore.write("1", catalog);
+		assertEquals(catalogSnapshotStore.read("1").getCode().getCode(), "code");
+		assertEquals(directory.listFiles().length, 1);
+	}
+
+	@Test
+	public void readInvalid() throws IOException
+	{
+		File file = new File(directory, "catalog_1.xml.gz");
+		FileUtils.writeStringToFile(file, "invalid");
+		assertNull(catalogSnapshotStore.read("1"));
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void delete()
+	{
+		catalogSnapshotStore.write("1", new REPCMT000100UV01Organizer());
+		catalogSnapshotStore.delete("1");
+		assertNull(catalogSnapshotStore.read("1"));
+	}
+}
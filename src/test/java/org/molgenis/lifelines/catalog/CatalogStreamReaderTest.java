@@ -0,0 +1,99 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import nl.umcg.hl7.service.catalog.GenericLayerCatalogService;
+
+import org.apache.http.client.HttpClient;
+import org.hl7.v3.REPCMT000100UV01Component3;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+import org.testng.annotations.Test;
+
+public class CatalogStreamReaderTest
+{
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogStreamReader()
+	{
+		new CatalogStreamReader(null, mock(HttpClient.class), new Hl7JaxbCodec());
+	}
+
+	@Test
+	public void readOrganizers() throws XMLStreamException, JAXBException
+	{
+		String xml = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>"
+				+ "<getCatalogResponse xmlns=\"http://www.umcg.nl/hl7/service/catalog\">"
+				+ "<getCatalogResult xmlns=\"urn:hl7-org:v3\"><code code=\"catalog\"/>"
+				+ "<component><organizer><code code=\"group0\"/>"
+				+ "<component><organizer><code code=\"group00\"/>"
+				+ "<component><organizer><code code=\"group000\"/></organizer></component></organizer></component>"
+				+ "<component><organizer><code code=\"group01\"/></organizer></component></organizer></component>"
+				+ "<component><organizer><code code=\"group1\"/><effectiveTime><low value=\"20130101\"/>"
+				+ "</effectiveTime></organizer></component>"
+				+ "</getCatalogResult></getCatalogResponse></s:Body></s:Envelope>";
+
+		// report top level organizers by header and their child organizers as subtree
+		final List<String> events = new ArrayList<String>();
+		new CatalogStreamReader(mock(GenericLayerCatalogService.class), mock(HttpClient.class), new Hl7JaxbCodec())
+				.readOrganizers(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)),
+						new CatalogOrganizerHandler()
+						{
+							@Override
+							public boolean isSubtree(List<CatalogOrganizerHeader> path)
+							{
+								return !path.isEmpty();
+							}
+
+							@Override
+							public void startOrganizer(List<CatalogOrganizerHeader> path)
+							{
+								CatalogOrganizerHeader header = path.get(path.size() - 1);
+								events.add("start " + toString(path) + (header.isAvailable() ? "" : " unavailable"));
+							}
+
+							@Override
+							public void organizer(List<CatalogOrganizerHeader> path,
+									REPCMT000100UV01Organizer organizer)
+							{
+								StringBuilder strBuilder = new StringBuilder("organizer ").append(toString(path))
+										.append(' ').append(organizer.getCode().getCode());
+								for (REPCMT000100UV01Component3 component : organizer.getComponent())
+								{
+									strBuilder.append(' ').append(
+											component.getOrganizer().getValue().getCode().getCode());
+								}
+								events.add(strBuilder.toString());
+							}
+
+							@Override
+							public void endOrganizer(List<CatalogOrganizerHeader> path)
+							{
+								events.add("end " + toString(path));
+							}
+
+							private String toString(List<CatalogOrganizerHeader> path)
+							{
+								StringBuilder strBuilder = new StringBuilder();
+								for (CatalogOrganizerHeader header : path)
+								{
+									if (strBuilder.length() > 0) strBuilder.append('/');
+									strBuilder.append(header.getCode().getCode());
+								}
+								return strBuilder.toString();
+							}
+						});
+
+		assertEquals(events, Arrays.asList("start group0", "organizer group0 group00 group000",
+				"organizer group0 group01", "end group0", "start group1 unavailable", "end group1"));
+	}
+}
@@ -0,0 +1,134 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.molgenis.catalog.CatalogFolder;
+import org.molgenis.catalog.CatalogItem;
+import org.molgenis.catalog.UnknownCatalogException;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogTreeServiceTest
+{
+	private CatalogTreeService catalogTreeService;
+
+	@BeforeMethod
+	public void beforeMethod() throws UnknownCatalogException
+	{
+		// folders with the same id, e.g. the same measurement in different cohorts
+		CatalogFolder folder0 = createFolder("folder", createFolder("subfolder"));
+		CatalogFolder folder1 = createFolder("folder", createFolder("subfolder"));
+		CatalogItem item0 = mock(CatalogItem.class);
+		when(item0.getId()).thenReturn("item0");
+
+		OrganizerCatalog catalog = mock(OrganizerCatalog.class);
+		when(catalog.getChildren()).thenReturn(Arrays.asList(folder0, folder1));
+		when(catalog.getItems()).thenReturn(Arrays.asList(item0));
+
+		// activated catalog 2 with protocol 21 containing protocol 22 and feature 23
+		ObservableFeature feature = new ObservableFeature();
+		feature.setId(23);
+		Protocol subprotocol = new Protocol();
+		subprotocol.setId(22);
+		Protocol protocol = new Protocol();
+		protocol.setId(21);
+		protocol.setSubprotocols(Arrays.asList(subprotocol));
+		protocol.setFeatures(Arrays.asList(feature));
+		Protocol rootProtocol = new Protocol();
+		rootProtocol.setId(20);
+		rootProtocol.setSubprotocols(Arrays.asList(protocol));
+		DataService dataService = mock(DataService.class);
+		when(dataService.findOne(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class))).thenReturn(
+				rootProtocol);
+
+		LifeLinesCatalogManagerService catalogManagerService = mock(LifeLinesCatalogManagerService.class);
+		when(catalogManagerService.isCatalogActivated("1")).thenReturn(false);
+		when(catalogManagerService.getCatalog("1")).thenReturn(catalog);
+		when(catalogManagerService.isCatalogActivated("2")).thenReturn(true);
+		catalogTreeService = new CatalogTreeService(catalogManagerService, dataService);
+	}
+
+	@Test
+	public void getChildren() throws UnknownCatalogException
+	{
+		CatalogNodePage page = catalogTreeService.getChildren("1", null, 0, 10);
+		assertEquals(page.getTotal(), 3);
+		assertEquals(page.getNodes().size(), 3);
+		assertTrue(page.getNodes().get(0).isFolder());
+		assertFalse(page.getNodes().get(2).isFolder());
+	}
+
+	@Test
+	public void getChildrenPage() throws UnknownCatalogException
+	{
+		CatalogNodePage page = catalogTreeService.getChildren("1", null, 1, 2);
+		assertEquals(page.getTotal(), 3);
+		assertEquals(page.getNodes().size(), 2);
+		assertEquals(page.getNodes().get(0).getId(), "folder_1");
+		assertEquals(page.getNodes().get(1).getId(), "item_0");
+	}
+
+	@Test
+	public void getChildrenOfFolder() throws UnknownCatalogException
+	{
+		CatalogNodePage page = catalogTreeService.getChildren("1", "folder_1", 0, 10);
+		assertEquals(page.getTotal(), 1);
+		assertEquals(page.getNodes().get(0).getId(), "folder_1.0");
+
+		page = catalogTreeService.getChildren("1", "folder_1.0", 0, 10);
+		assertEquals(page.getTotal(), 0);
+		assertTrue(page.getNodes().isEmpty());
+	}
+
+	@Test(expectedExceptions = UnknownCatalogException.class)
+	public void getChildrenUnknownParent() throws UnknownCatalogException
+	{
+		catalogTreeService.getChildren("1", "unknown", 0, 10);
+	}
+
+	@Test(expectedExceptions = UnknownCatalogException.class)
+	public void getChildrenUnknownParentIndex() throws UnknownCatalogException
+	{
+		catalogTreeService.getChildren("1", "folder_0.1", 0, 10);
+	}
+
+	@Test
+	public void getChildrenOfActivatedCatalog() throws UnknownCatalogException
+	{
+		CatalogNodePage page = catalogTreeService.getChildren("2", null, 0, 10);
+		assertEquals(page.getTotal(), 1);
+		assertEquals(page.getNodes().get(0).getId(), "protocol_21");
+
+		page = catalogTreeService.getChildren("2", "protocol_21", 0, 10);
+		assertEquals(page.getTotal(), 2);
+		assertEquals(page.getNodes().get(0).getId(), "protocol_21.22");
+		assertEquals(page.getNodes().get(1).getId(), "feature_21.23");
+	}
+
+	@Test(expectedExceptions = UnknownCatalogException.class)
+	public void getChildrenOfActivatedCatalogProtocolOfOtherCatalog() throws UnknownCatalogException
+	{
+		catalogTreeService.getChildren("2", "protocol_22", 0, 10);
+	}
+
+	private static CatalogFolder createFolder(String id, CatalogFolder... children)
+	{
+		CatalogFolder folder = mock(CatalogFolder.class);
+		when(folder.getId()).thenReturn(id);
+		when(folder.getChildren()).thenReturn(Arrays.asList(children));
+		when(folder.getItems()).thenReturn(Arrays.<CatalogItem> asList());
+		return folder;
+	}
+}
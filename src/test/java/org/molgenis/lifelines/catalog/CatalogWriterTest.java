@@ -0,0 +1,146 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.mockito.InOrder;
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CatalogWriterTest
+{
+	private DataService dataService;
+	private CrudRepository protocolRepository;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataService = mock(DataService.class);
+		protocolRepository = mock(CrudRepository.class);
+		when(dataService.getCrudRepository(Protocol.ENTITY_NAME)).thenReturn(protocolRepository);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void CatalogWriter()
+	{
+		new CatalogWriter(dataService, 0);
+	}
+
+	@Test
+	public void addBelowBatchSize()
+	{
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 3);
+		catalogWriter.add(new ObservableFeature());
+		catalogWriter.add(new Protocol());
+		verify(dataService, never()).add(any(String.class), any(Iterable.class));
+		assertEquals(catalogWriter.getNrWrittenEntities(), 0);
+	}
+
+	@Test
+	public void addWritesBatchInDependencyOrder()
+	{
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 3);
+		catalogWriter.add(new Protocol());
+		catalogWriter.add(new Category());
+		catalogWriter.add(new ObservableFeature());
+		catalogWriter.add(new OntologyTerm());
+
+		InOrder inOrder = inOrder(dataService, protocolRepository);
+		inOrder.verify(dataService).add(eq(OntologyTerm.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(dataService).add(eq(ObservableFeature.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(dataService).add(eq(Category.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(dataService).add(eq(Protocol.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(protocolRepository).flush();
+		inOrder.verify(protocolRepository).clearCache();
+		assertEquals(catalogWriter.getNrWrittenEntities(), 4);
+	}
+
+	@Test
+	public void addCategoriesCountTowardsBatchSize()
+	{
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 3);
+		catalogWriter.add(new ObservableFeature());
+		catalogWriter.add(new Category());
+		verify(dataService, never()).add(any(String.class), any(Iterable.class));
+
+		catalogWriter.add(new Category());
+		verify(dataService, times(1)).add(eq(ObservableFeature.ENTITY_NAME), any(Iterable.class));
+		verify(dataService, times(1)).add(eq(Category.ENTITY_NAME), any(Iterable.class));
+		assertEquals(catalogWriter.getNrWrittenEntities(), 3);
+	}
+
+	@Test
+	public void addFeatureWithNewUnit()
+	{
+		ObservableFeature feature0 = new ObservableFeature();
+		ObservableFeature feature1 = new ObservableFeature();
+		OntologyTerm unit = new OntologyTerm();
+		feature0.setUnit(unit);
+		feature1.setUnit(unit);
+
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 100);
+		catalogWriter.add(feature0);
+		catalogWriter.add(feature1);
+		catalogWriter.flush();
+		verify(dataService, times(1)).add(eq(OntologyTerm.ENTITY_NAME), any(Iterable.class));
+		assertEquals(catalogWriter.getNrWrittenEntities(), 3);
+	}
+
+	@Test
+	public void flushReleasesWrittenProtocols()
+	{
+		Protocol subprotocol = new Protocol();
+		Protocol protocol = new Protocol();
+		protocol.setSubprotocols(Arrays.asList(subprotocol));
+		protocol.setFeatures(Arrays.asList(new ObservableFeature()));
+
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 100, true);
+		catalogWriter.add(subprotocol);
+		catalogWriter.add(protocol);
+		catalogWriter.flush();
+		assertNull(protocol.getSubprotocols());
+		assertNull(protocol.getFeatures());
+	}
+
+	@Test
+	public void flushKeepsWrittenProtocols()
+	{
+		Protocol subprotocol = new Protocol();
+		Protocol protocol = new Protocol();
+		protocol.setSubprotocols(Arrays.asList(subprotocol));
+
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 100);
+		catalogWriter.add(subprotocol);
+		catalogWriter.add(protocol);
+		catalogWriter.flush();
+		assertEquals(protocol.getSubprotocols(), Arrays.asList(subprotocol));
+	}
+
+	@Test
+	public void flush()
+	{
+		CatalogWriter catalogWriter = new CatalogWriter(dataService, 100);
+		catalogWriter.add(new Protocol());
+		catalogWriter.flush();
+		catalogWriter.flush();
+		verify(dataService, times(1)).add(eq(Protocol.ENTITY_NAME), any(Iterable.class));
+		verify(dataService, never()).add(eq(ObservableFeature.ENTITY_NAME), any(Iterable.class));
+		assertEquals(catalogWriter.getNrWrittenEntities(), 1);
+	}
+}
@@ -0,0 +1,114 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.hl7.v3.CD;
+import org.hl7.v3.REPCMT000100UV01Component3;
+import org.hl7.v3.REPCMT000100UV01Observation;
+import org.hl7.v3.REPCMT000100UV01Organizer;
+import org.molgenis.catalog.CatalogFolder;
+import org.molgenis.catalog.CatalogMeta;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+public class OrganizerCatalogTest
+{
+	private static final String HL7_NAMESPACE = "urn:hl7-org:v3";
+
+	private OrganizerCatalog organizerCatalog;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		REPCMT000100UV01Organizer subFolder = createOrganizer("sub");
+		subFolder.getComponent().add(createObservationComponent("item"));
+		REPCMT000100UV01Organizer folder = createOrganizer("folder");
+		folder.getComponent().add(createOrganizerComponent(subFolder));
+		REPCMT000100UV01Organizer catalog = createOrganizer("catalog");
+		catalog.getComponent().add(createOrganizerComponent(folder));
+
+		organizerCatalog = new OrganizerCatalog(catalog, new CatalogMeta("1", "catalog"));
+	}
+
+	@Test
+	public void findItem()
+	{
+		assertEquals(organizerCatalog.findItem("system.folder").getId(), "system.folder");
+		assertEquals(organizerCatalog.findItem("system.sub").getId(), "system.sub");
+		assertNull(organizerCatalog.findItem("system.unknown"));
+	}
+
+	@Test
+	public void findCatalogItem()
+	{
+		assertEquals(organizerCatalog.findCatalogItem("item").getCode(), "item");
+		assertNull(organizerCatalog.findCatalogItem("unknown"));
+	}
+
+	@Test
+	public void getPath()
+	{
+		CatalogFolder subFolder = organizerCatalog.findItem("system.sub");
+		assertEquals(Lists.newArrayList(subFolder.getPath()),
+				Arrays.asList(organizerCatalog.findItem("system.folder"), subFolder));
+		assertEquals(organizerCatalog.findCatalogItem("item").getPath(), subFolder.getPath());
+	}
+
+	@Test
+	public void getPathOfItemWithoutFolder()
+	{
+		REPCMT000100UV01Observation observation = new REPCMT000100UV01Observation();
+		observation.setCode(createCode("item"));
+		assertTrue(Iterables.isEmpty(new RepcObservationCatalogItem(observation).getPath()));
+	}
+
+	@Test
+	public void getChildren()
+	{
+		assertEquals(organizerCatalog.getChildren().size(), 1);
+		assertEquals(organizerCatalog.getChildren(), organizerCatalog.getChildren());
+	}
+
+	private static REPCMT000100UV01Organizer createOrganizer(String code)
+	{
+		REPCMT000100UV01Organizer organizer = new REPCMT000100UV01Organizer();
+		organizer.setCode(createCode(code));
+		return organizer;
+	}
+
+	private static REPCMT000100UV01Component3 createOrganizerComponent(REPCMT000100UV01Organizer organizer)
+	{
+		REPCMT000100UV01Component3 component = new REPCMT000100UV01Component3();
+		component.setOrganizer(new JAXBElement<REPCMT000100UV01Organizer>(new QName(HL7_NAMESPACE, "organizer"),
+				REPCMT000100UV01Organizer.class, organizer));
+		return component;
+	}
+
+	private static REPCMT000100UV01Component3 createObservationComponent(String code)
+	{
+		REPCMT000100UV01Observation observation = new REPCMT000100UV01Observation();
+		observation.setCode(createCode(code));
+		REPCMT000100UV01Component3 component = new REPCMT000100UV01Component3();
+		component.setObservation(new JAXBElement<REPCMT000100UV01Observation>(new QName(HL7_NAMESPACE,
+				"observation"), REPCMT000100UV01Observation.class, observation));
+		return component;
+	}
+
+	private static CD createCode(String code)
+	{
+		CD cd = new CD();
+		cd.setCode(code);
+		cd.setCodeSystem("system");
+		return cd;
+	}
+}
@@ -0,0 +1,60 @@
+package org.molgenis.lifelines.catalog;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.target.OntologyTerm;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UnitOntologyTermRegistryTest
+{
+	private UnitOntologyTermRegistry unitOntologyTermRegistry;
+	private OntologyTerm kgOntologyTerm;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		kgOntologyTerm = new OntologyTerm();
+		kgOntologyTerm.setIdentifier("OntologyTerm_2.16.840.1.113883.6.8.kg");
+		kgOntologyTerm.setName("kg");
+
+		DataService dataService = mock(DataService.class);
+		when(dataService.findAll(eq(OntologyTerm.ENTITY_NAME), any(Query.class), eq(OntologyTerm.class)))
+				.thenReturn(Arrays.asList(kgOntologyTerm));
+		unitOntologyTermRegistry = new UnitOntologyTermRegistry(dataService);
+	}
+
+	@Test
+	public void getUnitOntologyTermExisting()
+	{
+		assertSame(unitOntologyTermRegistry.getUnitOntologyTerm("kg"), kgOntologyTerm);
+	}
+
+	@Test
+	public void getUnitOntologyTermNew()
+	{
+		OntologyTerm mmHgOntologyTerm = unitOntologyTermRegistry.getUnitOntologyTerm("mmHg");
+		assertEquals(mmHgOntologyTerm.getIdentifier(), "OntologyTerm_2.16.840.1.113883.6.8.mmHg");
+		assertEquals(mmHgOntologyTerm.getName(), "mmHg");
+		assertNull(mmHgOntologyTerm.getId());
+		assertSame(unitOntologyTermRegistry.getUnitOntologyTerm("mmHg"), mmHgOntologyTerm);
+		assertNotSame(unitOntologyTermRegistry.getUnitOntologyTerm("cm"), mmHgOntologyTerm);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getUnitOntologyTermNull()
+	{
+		unitOntologyTermRegistry.getUnitOntologyTerm(null);
+	}
+}
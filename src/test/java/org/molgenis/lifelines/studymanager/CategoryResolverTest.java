@@ -0,0 +1,65 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.lifelines.utils.OmxIdentifierGenerator;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CategoryResolverTest
+{
+	private DataService dataService;
+	private ObservableFeature feature;
+	private Category category;
+	private CategoryResolver categoryResolver;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		feature = new ObservableFeature();
+		feature.setId(1);
+
+		// catalog categories have generated identifiers
+		dataService = mock(DataService.class);
+		category = new Category();
+		category.setIdentifier("a7f2c5de-3f0e-4a53-9b4e-0c1d2e3f4a5b");
+		category.setValueCode("1");
+		category.setObservableFeature(feature);
+		when(dataService.findAll(eq(Category.ENTITY_NAME), any(Query.class), eq(Category.class))).thenReturn(
+				Arrays.asList(category));
+
+		categoryResolver = new CategoryResolver(dataService, Collections.singletonList(feature));
+	}
+
+	@Test
+	public void getCategory()
+	{
+		assertEquals(categoryResolver.getCategory(feature, "system", "1"), category);
+		verify(dataService, never()).findOne(any(String.class), any(Query.class), eq(Category.class));
+	}
+
+	@Test
+	public void getCategoryMissing()
+	{
+		assertNull(categoryResolver.getCategory(feature, "system", "2"));
+		assertNull(categoryResolver.getCategory(feature, "system", "2"));
+		verify(dataService, times(1)).findOne(eq(Category.ENTITY_NAME), any(Query.class), eq(Category.class));
+		assertEquals(categoryResolver.getNrMissingValues(),
+				Collections.singletonMap(OmxIdentifierGenerator.from(Category.class, "system", "2"), 2));
+	}
+}
@@ -1,9 +1,13 @@
 package org.molgenis.lifelines.studymanager;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -12,24 +16,35 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.JAXB;
 
 import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionService;
+import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionServiceGetApprovedFAULTFaultMessage;
 import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionServiceGetByIdFAULTFaultMessage;
+import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionServiceGetDraftFAULTFaultMessage;
 import nl.umcg.hl7.service.studydefinition.GenericLayerStudyDefinitionServiceReviseFAULTFaultMessage;
+import nl.umcg.hl7.service.studydefinition.GetApprovedResponse;
+import nl.umcg.hl7.service.studydefinition.GetDraftResponse;
 
+import org.hl7.v3.ArrayOfXElement;
 import org.hl7.v3.HL7Container;
+import org.hl7.v3.II;
 import org.hl7.v3.POQMMT000001UVQualityMeasureDocument;
 import org.mockito.ArgumentCaptor;
 import org.molgenis.catalog.CatalogFolder;
 import org.molgenis.catalogmanager.CatalogManagerService;
 import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
 import org.molgenis.omx.auth.MolgenisUser;
 import org.molgenis.omx.observ.Protocol;
 import org.molgenis.omx.study.StudyDataRequest;
 import org.molgenis.security.user.MolgenisUserService;
 import org.molgenis.study.StudyDefinition;
+import org.molgenis.study.StudyDefinition.Status;
 import org.molgenis.study.UnknownStudyDefinitionException;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
@@ -63,6 +78,52 @@ public class GenericLayerStudyManagerServiceTest
 	{
 	}
 
+	@Test
+	public void getStudyDefinitionsByStatuses() throws GenericLayerStudyDefinitionServiceGetApprovedFAULTFaultMessage,
+			GenericLayerStudyDefinitionServiceGetDraftFAULTFaultMessage
+	{
+		when(studyDefinitionService.getApproved(null)).thenReturn(mock(GetApprovedResponse.class));
+		when(studyDefinitionService.getDraft(null)).thenReturn(mock(GetDraftResponse.class));
+
+		Map<Status, List<StudyDefinition>> studyDefinitions = service.getStudyDefinitions(Arrays.asList(
+				Status.APPROVED, Status.EXPORTED, Status.DRAFT, Status.REJECTED));
+		assertEquals(studyDefinitions.keySet(),
+				new LinkedHashSet<Status>(Arrays.asList(Status.APPROVED, Status.EXPORTED, Status.DRAFT,
+						Status.REJECTED)));
+		for (List<StudyDefinition> statusStudyDefinitions : studyDefinitions.values())
+			assertTrue(statusStudyDefinitions.isEmpty());
+		verify(studyDefinitionService, times(1)).getApproved(null);
+		verify(studyDefinitionService, times(1)).getDraft(null);
+	}
+
+	@Test
+	public void getStudyDefinitionsStatusResolvesStudyDataRequestsAtOnce()
+			throws GenericLayerStudyDefinitionServiceGetDraftFAULTFaultMessage
+	{
+		ArrayOfXElement hl7Containers = new ArrayOfXElement();
+		hl7Containers.getHL7Container().add(createContainer("1"));
+		hl7Containers.getHL7Container().add(createContainer("2"));
+		GetDraftResponse draftResponse = mock(GetDraftResponse.class);
+		when(draftResponse.getHL7Containers()).thenReturn(hl7Containers);
+		when(studyDefinitionService.getDraft(null)).thenReturn(draftResponse);
+
+		StudyDataRequest studyDataRequest1 = new StudyDataRequest();
+		studyDataRequest1.setId(11);
+		studyDataRequest1.setIdentifier(StudyDefinitionIdConverter.studyDefinitionIdToOmxIdentifier("1"));
+		StudyDataRequest studyDataRequest2 = new StudyDataRequest();
+		studyDataRequest2.setId(12);
+		studyDataRequest2.setIdentifier(StudyDefinitionIdConverter.studyDefinitionIdToOmxIdentifier("2"));
+		when(dataService.findAll(eq(StudyDataRequest.ENTITY_NAME), any(Query.class), eq(StudyDataRequest.class)))
+				.thenReturn(Arrays.asList(studyDataRequest2, studyDataRequest1));
+
+		List<StudyDefinition> studyDefinitions = service.getStudyDefinitions(Status.DRAFT);
+		assertEquals(studyDefinitions.size(), 2);
+		assertEquals(studyDefinitions.get(0).getId(), "11");
+		assertEquals(studyDefinitions.get(1).getId(), "12");
+		verify(dataService, times(1)).findAll(eq(StudyDataRequest.ENTITY_NAME), any(Query.class),
+				eq(StudyDataRequest.class));
+	}
+
 	@Test
 	public void testUpdateStudyDataRequestMergesEncountersIntoSameObservation() throws UnknownStudyDefinitionException,
 			GenericLayerStudyDefinitionServiceGetByIdFAULTFaultMessage,
@@ -190,4 +251,15 @@ public class GenericLayerStudyManagerServiceTest
 		String expectedString = expected.toString();
 		return expectedString;
 	}
+
+	private static HL7Container createContainer(String id)
+	{
+		II ii = new II();
+		ii.setExtension(id);
+		POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = new POQMMT000001UVQualityMeasureDocument();
+		qualityMeasureDocument.setId(ii);
+		HL7Container container = new HL7Container();
+		container.setQualityMeasureDocument(qualityMeasureDocument);
+		return container;
+	}
 }
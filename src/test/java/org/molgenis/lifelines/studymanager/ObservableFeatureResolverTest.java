@@ -0,0 +1,65 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ObservableFeatureResolverTest
+{
+	private DataService dataService;
+	private ObservableFeature feature;
+	private Protocol protocol;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataService = mock(DataService.class);
+		feature = new ObservableFeature();
+		feature.setIdentifier("feature");
+		Protocol subprotocol = new Protocol();
+		subprotocol.setFeatures(Arrays.asList(feature));
+		protocol = new Protocol();
+		protocol.setSubprotocols(Arrays.asList(subprotocol));
+	}
+
+	@Test
+	public void getFeature()
+	{
+		ObservableFeatureResolver observableFeatureResolver = new ObservableFeatureResolver(dataService, protocol);
+		assertEquals(observableFeatureResolver.getFeature("feature"), feature);
+		verify(dataService, never()).findOne(any(String.class), any(Query.class), eq(ObservableFeature.class));
+	}
+
+	@Test
+	public void getFeatureOutsideProtocol()
+	{
+		ObservableFeature otherFeature = new ObservableFeature();
+		when(dataService.findOne(eq(ObservableFeature.ENTITY_NAME), any(Query.class), eq(ObservableFeature.class)))
+				.thenReturn(otherFeature);
+		ObservableFeatureResolver observableFeatureResolver = new ObservableFeatureResolver(dataService, null);
+		assertEquals(observableFeatureResolver.getFeature("other"), otherFeature);
+		assertEquals(observableFeatureResolver.getFeature("other"), otherFeature);
+		verify(dataService, times(1)).findOne(eq(ObservableFeature.ENTITY_NAME), any(Query.class),
+				eq(ObservableFeature.class));
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void getFeatureUnknown()
+	{
+		new ObservableFeatureResolver(dataService, protocol).getFeature("unknown");
+	}
+}
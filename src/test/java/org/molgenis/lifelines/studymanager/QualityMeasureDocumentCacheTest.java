@@ -0,0 +1,116 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.Callable;
+
+import org.hl7.v3.II;
+import org.hl7.v3.POQMMT000001UVQualityMeasureDocument;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class QualityMeasureDocumentCacheTest
+{
+	private QualityMeasureDocumentCache qualityMeasureDocumentCache;
+	private Callable<POQMMT000001UVQualityMeasureDocument> documentRetriever;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void beforeMethod() throws Exception
+	{
+		qualityMeasureDocumentCache = new QualityMeasureDocumentCache(new Hl7JaxbCodec(), 2);
+		documentRetriever = mock(Callable.class);
+		when(documentRetriever.call()).thenReturn(createQualityMeasureDocument("1"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void QualityMeasureDocumentCache()
+	{
+		new QualityMeasureDocumentCache(new Hl7JaxbCodec(), 0);
+	}
+
+	@Test
+	public void getQualityMeasureDocument() throws Exception
+	{
+		assertEquals(qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever).getId()
+				.getExtension(), "1");
+		assertEquals(qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever).getId()
+				.getExtension(), "1");
+		verify(documentRetriever, times(1)).call();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void QualityMeasureDocumentCacheTimeToLive()
+	{
+		new QualityMeasureDocumentCache(new Hl7JaxbCodec(), 2, 0);
+	}
+
+	@Test
+	public void getQualityMeasureDocumentExpired() throws Exception
+	{
+		qualityMeasureDocumentCache = new QualityMeasureDocumentCache(new Hl7JaxbCodec(), 2, 1);
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		Thread.sleep(10);
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		verify(documentRetriever, times(2)).call();
+	}
+
+	@Test
+	public void getQualityMeasureDocumentReturnsCopy() throws Exception
+	{
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever).getId().setExtension("2");
+		assertEquals(qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever).getId()
+				.getExtension(), "1");
+	}
+
+	@Test
+	public void getQualityMeasureDocumentEvictsLeastRecentlyUsed() throws Exception
+	{
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		qualityMeasureDocumentCache.getQualityMeasureDocument("2", documentRetriever);
+		qualityMeasureDocumentCache.getQualityMeasureDocument("3", documentRetriever);
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		verify(documentRetriever, times(4)).call();
+	}
+
+	@Test
+	public void invalidate() throws Exception
+	{
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		qualityMeasureDocumentCache.invalidate("1");
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		verify(documentRetriever, times(2)).call();
+	}
+
+	@Test
+	public void invalidateDuringRetrieval() throws Exception
+	{
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1",
+				new Callable<POQMMT000001UVQualityMeasureDocument>()
+				{
+					@Override
+					public POQMMT000001UVQualityMeasureDocument call()
+					{
+						// the study definition is revised while the previous version is retrieved
+						qualityMeasureDocumentCache.invalidate("1");
+						return createQualityMeasureDocument("1");
+					}
+				});
+		qualityMeasureDocumentCache.getQualityMeasureDocument("1", documentRetriever);
+		verify(documentRetriever, times(1)).call();
+	}
+
+	private static POQMMT000001UVQualityMeasureDocument createQualityMeasureDocument(String id)
+	{
+		II ii = new II();
+		ii.setExtension(id);
+		POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = new POQMMT000001UVQualityMeasureDocument();
+		qualityMeasureDocument.setId(ii);
+		return qualityMeasureDocument;
+	}
+}
@@ -0,0 +1,101 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hl7.v3.CD;
+import org.hl7.v3.POQMMT000001UVComponent2;
+import org.hl7.v3.POQMMT000001UVEntry;
+import org.hl7.v3.POQMMT000001UVQualityMeasureDocument;
+import org.hl7.v3.POQMMT000001UVSection;
+import org.hl7.v3.POQMMT000002UVObservation;
+import org.molgenis.catalog.CatalogFolder;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.observ.Protocol;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class QualityMeasureDocumentStudyDefinitionTest
+{
+	private DataService dataService;
+	private QualityMeasureDocumentStudyDefinition studyDefinition;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		POQMMT000001UVSection section = new POQMMT000001UVSection();
+		section.getEntry().add(createEntry("protocol1"));
+		section.getEntry().add(createEntry("protocol2"));
+		POQMMT000001UVComponent2 component = new POQMMT000001UVComponent2();
+		component.setSection(section);
+		POQMMT000001UVQualityMeasureDocument qualityMeasureDocument = new POQMMT000001UVQualityMeasureDocument();
+		qualityMeasureDocument.getComponent().add(component);
+
+		Protocol protocol1 = new Protocol();
+		protocol1.setId(1);
+		protocol1.setIdentifier("protocol1");
+		Protocol protocol2 = new Protocol();
+		protocol2.setId(2);
+		protocol2.setIdentifier("protocol2");
+
+		dataService = mock(DataService.class);
+		when(dataService.findAll(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class))).thenReturn(
+				Arrays.asList(protocol2, protocol1));
+		studyDefinition = new QualityMeasureDocumentStudyDefinition(qualityMeasureDocument, dataService);
+	}
+
+	@Test
+	public void getItems()
+	{
+		List<CatalogFolder> items = studyDefinition.getItems();
+		assertEquals(items.size(), 2);
+		assertEquals(items.get(0).getId(), "1");
+		assertEquals(items.get(0).getCode(), "protocol1");
+		assertEquals(items.get(1).getId(), "2");
+		assertEquals(items.get(1).getCode(), "protocol2");
+		studyDefinition.getItems();
+		verify(dataService, times(1)).findAll(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class));
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void getItemsUnknownProtocol()
+	{
+		when(dataService.findAll(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class))).thenReturn(
+				Arrays.<Protocol> asList());
+		studyDefinition.getItems();
+	}
+
+	@Test
+	public void containsItem()
+	{
+		CatalogFolder item1 = mock(CatalogFolder.class);
+		when(item1.getId()).thenReturn("1");
+		CatalogFolder item3 = mock(CatalogFolder.class);
+		when(item3.getId()).thenReturn("3");
+		assertTrue(studyDefinition.containsItem(item1));
+		assertFalse(studyDefinition.containsItem(item3));
+		verify(dataService, times(1)).findAll(eq(Protocol.ENTITY_NAME), any(Query.class), eq(Protocol.class));
+	}
+
+	private static POQMMT000001UVEntry createEntry(String code)
+	{
+		CD observationCode = new CD();
+		observationCode.setCode(code);
+		POQMMT000002UVObservation observation = new POQMMT000002UVObservation();
+		observation.setCode(observationCode);
+		POQMMT000001UVEntry entry = new POQMMT000001UVEntry();
+		entry.setObservation(observation);
+		return entry;
+	}
+}
@@ -0,0 +1,157 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.data.Query;
+import org.molgenis.omx.core.RuntimeProperty;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class StudyDataLoadTest
+{
+	private DataService dataService;
+	private PlatformTransactionManager transactionManager;
+	private TransactionStatus transactionStatus0;
+	private TransactionStatus transactionStatus1;
+	private TransactionStatus transactionStatus2;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataService = mock(DataService.class);
+		when(dataService.getCrudRepository(any(String.class))).thenReturn(mock(CrudRepository.class));
+		transactionManager = mock(PlatformTransactionManager.class);
+		transactionStatus0 = mock(TransactionStatus.class);
+		transactionStatus1 = mock(TransactionStatus.class);
+		transactionStatus2 = mock(TransactionStatus.class);
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus0,
+				transactionStatus1, transactionStatus2);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void StudyDataLoad()
+	{
+		new StudyDataLoad("1", dataService, transactionManager, 10, -1);
+	}
+
+	@Test
+	public void writeInOneTransaction()
+	{
+		StudyDataLoad studyDataLoad = new StudyDataLoad("1", dataService, transactionManager, 10, 0);
+		write(studyDataLoad, 3);
+		studyDataLoad.commit();
+
+		ArgumentCaptor<TransactionDefinition> captor = ArgumentCaptor.forClass(TransactionDefinition.class);
+		verify(transactionManager).getTransaction(captor.capture());
+		assertEquals(captor.getValue().getPropagationBehavior(), TransactionDefinition.PROPAGATION_REQUIRED);
+		verify(transactionManager).commit(transactionStatus0);
+		verify(dataService, never()).add(eq(RuntimeProperty.ENTITY_NAME), any(RuntimeProperty.class));
+		assertEquals(studyDataLoad.getNrWrittenComponents(), 3);
+	}
+
+	@Test
+	public void writeInChunks()
+	{
+		StudyDataLoad studyDataLoad = new StudyDataLoad("1", dataService, transactionManager, 10, 2);
+		write(studyDataLoad, 5);
+		studyDataLoad.commit();
+
+		ArgumentCaptor<TransactionDefinition> captor = ArgumentCaptor.forClass(TransactionDefinition.class);
+		verify(transactionManager, times(3)).getTransaction(captor.capture());
+		for (TransactionDefinition transactionDefinition : captor.getAllValues())
+			assertEquals(transactionDefinition.getPropagationBehavior(),
+					TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		// the checkpoint of a chunk is committed with the chunk
+		InOrder inOrder = inOrder(dataService, transactionManager);
+		inOrder.verify(dataService).add(eq(RuntimeProperty.ENTITY_NAME), any(RuntimeProperty.class));
+		inOrder.verify(transactionManager).commit(transactionStatus0);
+		inOrder.verify(dataService).add(eq(RuntimeProperty.ENTITY_NAME), any(RuntimeProperty.class));
+		inOrder.verify(transactionManager).commit(transactionStatus1);
+		inOrder.verify(transactionManager).commit(transactionStatus2);
+		ArgumentCaptor<RuntimeProperty> checkpointCaptor = ArgumentCaptor.forClass(RuntimeProperty.class);
+		verify(dataService, times(2)).add(eq(RuntimeProperty.ENTITY_NAME), checkpointCaptor.capture());
+		assertEquals(checkpointCaptor.getAllValues().get(0).getValue(), "2");
+		assertEquals(checkpointCaptor.getAllValues().get(1).getValue(), "4");
+		assertEquals(studyDataLoad.getNrWrittenComponents(), 5);
+	}
+
+	@Test
+	public void rollbackKeepsCommittedChunks()
+	{
+		StudyDataLoad studyDataLoad = new StudyDataLoad("1", dataService, transactionManager, 10, 2);
+		write(studyDataLoad, 3);
+		studyDataLoad.rollback();
+
+		verify(transactionManager).commit(transactionStatus0);
+		verify(transactionManager).rollback(transactionStatus1);
+		verify(dataService).add(eq(RuntimeProperty.ENTITY_NAME), any(RuntimeProperty.class));
+		verify(dataService, never()).delete(eq(RuntimeProperty.ENTITY_NAME), any(RuntimeProperty.class));
+	}
+
+	@Test
+	public void resume()
+	{
+		RuntimeProperty checkpoint = createCheckpoint("2");
+		StudyDataLoad studyDataLoad = new StudyDataLoad("1", dataService, transactionManager, 10, 2);
+		write(studyDataLoad, 5);
+		studyDataLoad.commit();
+
+		verify(dataService).update(RuntimeProperty.ENTITY_NAME, checkpoint);
+		verify(dataService).delete(RuntimeProperty.ENTITY_NAME, checkpoint);
+		verify(transactionManager).commit(transactionStatus0);
+		verify(transactionManager).commit(transactionStatus1);
+		assertEquals(studyDataLoad.getNrWrittenComponents(), 3);
+	}
+
+	@Test
+	public void resumeWithoutChunks()
+	{
+		RuntimeProperty checkpoint = createCheckpoint("2");
+		StudyDataLoad studyDataLoad = new StudyDataLoad("1", dataService, transactionManager, 10, 0);
+		write(studyDataLoad, 5);
+		studyDataLoad.commit();
+
+		verify(dataService).delete(RuntimeProperty.ENTITY_NAME, checkpoint);
+		verify(transactionManager).commit(transactionStatus0);
+		assertEquals(studyDataLoad.getNrWrittenComponents(), 3);
+	}
+
+	@Test
+	public void isResumable()
+	{
+		assertEquals(StudyDataLoad.isResumable(dataService, "1"), false);
+		createCheckpoint("2");
+		assertEquals(StudyDataLoad.isResumable(dataService, "1"), true);
+	}
+
+	private RuntimeProperty createCheckpoint(String value)
+	{
+		RuntimeProperty checkpoint = new RuntimeProperty();
+		checkpoint.setValue(value);
+		when(dataService.findOne(eq(RuntimeProperty.ENTITY_NAME), any(Query.class), eq(RuntimeProperty.class)))
+				.thenReturn(checkpoint);
+		return checkpoint;
+	}
+
+	private static void write(StudyDataLoad studyDataLoad, int nrPatients)
+	{
+		for (int i = 0; i < nrPatients; ++i)
+			studyDataLoad.write(new PatientObservations(0));
+	}
+}
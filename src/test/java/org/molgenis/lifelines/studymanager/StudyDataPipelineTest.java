@@ -0,0 +1,83 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hl7.v3.REPCMT000400UV01Component4;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+import org.molgenis.omx.observ.value.StringValue;
+import org.testng.annotations.Test;
+
+public class StudyDataPipelineTest
+{
+	private static final int NR_PATIENTS = 50;
+
+	private final StudyDataStreamReader studyDataStreamReader = new StudyDataStreamReader(new Hl7JaxbCodec());
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void StudyDataPipeline()
+	{
+		new StudyDataPipeline(studyDataStreamReader, 1, 0);
+	}
+
+	@Test
+	public void run() throws XMLStreamException, JAXBException
+	{
+		final List<String> codes = new ArrayList<String>();
+		int nrComponents = new StudyDataPipeline(studyDataStreamReader, 4, 2).run(createReader(), new CodeConverter(),
+				new StudyDataPipeline.Writer()
+				{
+					@Override
+					public void write(PatientObservations patientObservations)
+					{
+						codes.add(patientObservations.getObservations().get(0).getFeatureIdentifier());
+					}
+				});
+		assertEquals(nrComponents, NR_PATIENTS);
+		assertEquals(codes.size(), NR_PATIENTS);
+		for (int i = 0; i < NR_PATIENTS; ++i)
+			assertEquals(codes.get(i), "patient" + i);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void runWriterFails() throws XMLStreamException, JAXBException
+	{
+		new StudyDataPipeline(studyDataStreamReader, 2, 1).run(createReader(), new CodeConverter(),
+				new StudyDataPipeline.Writer()
+				{
+					@Override
+					public void write(PatientObservations patientObservations)
+					{
+						throw new IllegalStateException();
+					}
+				});
+	}
+
+	private static XMLStreamReader createReader() throws XMLStreamException
+	{
+		StringBuilder xml = new StringBuilder("<actCategory xmlns=\"urn:hl7-org:v3\">");
+		for (int i = 0; i < NR_PATIENTS; ++i)
+			xml.append("<component><organizer><code code=\"patient").append(i).append("\"/></organizer></component>");
+		xml.append("</actCategory>");
+		return XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml.toString()));
+	}
+
+	private static class CodeConverter implements StudyDataPipeline.Converter
+	{
+		@Override
+		public PatientObservations convert(REPCMT000400UV01Component4 component)
+		{
+			PatientObservations patientObservations = new PatientObservations(1);
+			patientObservations.add(component.getOrganizer().getValue().getCode().getCode(), new StringValue());
+			return patientObservations;
+		}
+	}
+}
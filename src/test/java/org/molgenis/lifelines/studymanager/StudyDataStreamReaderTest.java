@@ -0,0 +1,41 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.hl7.v3.REPCMT000400UV01Component4;
+import org.molgenis.lifelines.utils.Hl7JaxbCodec;
+import org.testng.annotations.Test;
+
+public class StudyDataStreamReaderTest
+{
+	@Test
+	public void readComponents() throws XMLStreamException, JAXBException
+	{
+		String xml = "<actCategory xmlns=\"urn:hl7-org:v3\">"
+				+ "<component><organizer><code code=\"patient0\"/><component><observation/></component></organizer>"
+				+ "</component>" + "<component><organizer><code code=\"patient1\"/></organizer></component>"
+				+ "</actCategory>";
+
+		final List<String> codes = new ArrayList<String>();
+		int nrComponents = new StudyDataStreamReader(new Hl7JaxbCodec()).readComponents(XMLInputFactory.newInstance()
+				.createXMLStreamReader(new StringReader(xml)), new StudyDataComponentHandler()
+		{
+			@Override
+			public void component(REPCMT000400UV01Component4 component)
+			{
+				codes.add(component.getOrganizer().getValue().getCode().getCode());
+			}
+		});
+		assertEquals(nrComponents, 2);
+		assertEquals(codes, Arrays.asList("patient0", "patient1"));
+	}
+}
@@ -0,0 +1,78 @@
+package org.molgenis.lifelines.studymanager;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.mockito.InOrder;
+import org.molgenis.data.CrudRepository;
+import org.molgenis.data.DataService;
+import org.molgenis.omx.observ.ObservationSet;
+import org.molgenis.omx.observ.ObservedValue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class StudyDataWriterTest
+{
+	private DataService dataService;
+	private CrudRepository observedValueRepository;
+
+	@BeforeMethod
+	public void beforeMethod()
+	{
+		dataService = mock(DataService.class);
+		observedValueRepository = mock(CrudRepository.class);
+		when(dataService.getCrudRepository(ObservedValue.ENTITY_NAME)).thenReturn(observedValueRepository);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void StudyDataWriter()
+	{
+		new StudyDataWriter(dataService, 0);
+	}
+
+	@Test
+	public void addBelowBatchSize()
+	{
+		StudyDataWriter studyDataWriter = new StudyDataWriter(dataService, 3);
+		studyDataWriter.add(new ObservationSet(), Arrays.asList(new ObservedValue()));
+		verify(dataService, never()).add(any(String.class), any(Iterable.class));
+		assertEquals(studyDataWriter.getNrWrittenObservedValues(), 0);
+	}
+
+	@Test
+	public void addWritesBatchInDependencyOrder()
+	{
+		StudyDataWriter studyDataWriter = new StudyDataWriter(dataService, 3);
+		studyDataWriter.add(new ObservationSet(), Arrays.asList(new ObservedValue(), new ObservedValue()));
+
+		InOrder inOrder = inOrder(dataService, observedValueRepository);
+		inOrder.verify(dataService).add(eq(ObservationSet.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(dataService).add(eq(ObservedValue.ENTITY_NAME), any(Iterable.class));
+		inOrder.verify(observedValueRepository).flush();
+		inOrder.verify(observedValueRepository).clearCache();
+		assertEquals(studyDataWriter.getNrWrittenObservationSets(), 1);
+		assertEquals(studyDataWriter.getNrWrittenObservedValues(), 2);
+	}
+
+	@Test
+	public void flush()
+	{
+		StudyDataWriter studyDataWriter = new StudyDataWriter(dataService, 100);
+		studyDataWriter.add(new ObservationSet(), Collections.<ObservedValue> emptyList());
+		studyDataWriter.flush();
+		studyDataWriter.flush();
+		verify(dataService, times(1)).add(eq(ObservationSet.ENTITY_NAME), any(Iterable.class));
+		verify(dataService, never()).add(eq(ObservedValue.ENTITY_NAME), any(Iterable.class));
+		assertEquals(studyDataWriter.getNrWrittenObservationSets(), 1);
+	}
+}
@@ -0,0 +1,43 @@
+package org.molgenis.lifelines.utils;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+public class GzipCompressingHttpEntityTest
+{
+	@Test
+	public void getContentEncoding()
+	{
+		assertEquals(new GzipCompressingHttpEntity(createEntity()).getContentEncoding().getValue(), "gzip");
+	}
+
+	@Test
+	public void writeTo() throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		new GzipCompressingHttpEntity(createEntity()).writeTo(bos);
+		String content = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())), "UTF-8");
+		assertEquals(content, "content");
+	}
+
+	private static OutputStreamHttpEntity createEntity()
+	{
+		return new OutputStreamHttpEntity()
+		{
+			@Override
+			public void writeTo(OutputStream outstream) throws IOException
+			{
+				outstream.write("content".getBytes("UTF-8"));
+				outstream.close();
+			}
+		};
+	}
+}
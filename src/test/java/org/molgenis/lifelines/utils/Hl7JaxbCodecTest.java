@@ -0,0 +1,29 @@
+package org.molgenis.lifelines.utils;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+public class Hl7JaxbCodecTest
+{
+	@Test
+	public void getUnmarshaller()
+	{
+		Hl7JaxbCodec hl7JaxbCodec = new Hl7JaxbCodec();
+		assertNotSame(hl7JaxbCodec.getUnmarshaller(), hl7JaxbCodec.getUnmarshaller());
+		assertNull(hl7JaxbCodec.getUnmarshaller().getSchema());
+	}
+
+	@Test
+	public void getValidatingUnmarshaller()
+	{
+		assertNull(new Hl7JaxbCodec().getValidatingUnmarshaller().getSchema());
+	}
+
+	@Test
+	public void getSchema()
+	{
+		assertNull(new Hl7JaxbCodec().getSchema());
+	}
+}